@@ -3,7 +3,8 @@ package fullforum;
 import fullforum.data.repos.UserRepository;
 import fullforum.services.Auth;
 import fullforum.services.IAuth;
-import org.modelmapper.ModelMapper;
+import fullforum.services.PasswordHasher;
+import fullforum.services.SessionStore;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.context.annotation.RequestScope;
@@ -16,15 +17,9 @@ public class AppConfig {
 
     @Bean
     @RequestScope
-    public IAuth IAuth(HttpServletRequest request, HttpServletResponse response, UserRepository userRepository) {
-        return new Auth(request, response, userRepository);
-    }
-
-    @Bean
-    public ModelMapper modelMapper() {
-        var mapper = new ModelMapper();
-
-        return mapper;
+    public IAuth IAuth(HttpServletRequest request, HttpServletResponse response, UserRepository userRepository,
+                       SessionStore sessionStore, PasswordHasher passwordHasher) {
+        return new Auth(request, response, userRepository, sessionStore, passwordHasher);
     }
 
 }
@@ -4,21 +4,23 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fullforum.data.models.User;
 import fullforum.errhand.BadRequestException;
+import fullforum.services.Auth;
 import fullforum.services.IAuth;
+import fullforum.services.PasswordHasher;
+import fullforum.services.SessionStore;
 import fullforum.data.repos.UserRepository;
 import fullforum.dto.in.LoginModel;
 import fullforum.dto.out.Quser;
 import fullforum.errhand.ErrorCode;
 import org.hibernate.cfg.NotYetImplementedException;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.transaction.Transactional;
 import javax.validation.Valid;
-import java.time.Duration;
 
 @Transactional
 @RestController
@@ -32,7 +34,10 @@ public class AccessController {
     UserRepository userRepository;
 
     @Autowired
-    ModelMapper modelMapper;
+    SessionStore sessionStore;
+
+    @Autowired
+    PasswordHasher passwordHasher;
 
     @GetMapping("me")
     public Quser me() {
@@ -42,7 +47,7 @@ public class AccessController {
 
         var user = userRepository.findById(auth.userId()).orElseThrow();
 
-        return Quser.convert(user, modelMapper);
+        return Quser.convert(user);
     }
 
     @PostMapping("login")
@@ -54,35 +59,42 @@ public class AccessController {
         if (user == null) {
             throw new BadRequestException(ErrorCode.UsernameNotExist, "Username not exist");
         }
-        if (!user.checkPassword(model.password)) {
+        if (!user.checkPassword(model.password, passwordHasher)) {
             throw new BadRequestException(ErrorCode.WrongPassword, "Password incorrect");
         }
+        if (user.upgradePassword(model.password, passwordHasher)) {
+            userRepository.save(user);
+        }
 
         // username password ok
-        // set cookie
-        int maxage = (int) Duration.ofDays(180).toSeconds();
+        // set cookie，密码不再写入cookie
         var usernameCookie = new Cookie("username", model.username);
-        usernameCookie.setMaxAge(maxage);
+        usernameCookie.setMaxAge(Auth.COOKIE_MAX_AGE);
         usernameCookie.setPath("/");
         response.addCookie(usernameCookie);
 
-        var passwordCookie = new Cookie("password", model.password);
-        passwordCookie.setMaxAge(maxage);
+        var passwordCookie = new Cookie("password", null);
         passwordCookie.setPath("/");
+        passwordCookie.setMaxAge(0);
         response.addCookie(passwordCookie);
+
+        response.addCookie(Auth.tokenCookie(sessionStore.issue(user.getId())));
     }
 
     @PostMapping("logout")
-    public void logout(HttpServletResponse response) {
+    public void logout(HttpServletRequest request, HttpServletResponse response) {
+        sessionStore.revoke(Auth.readCookie(request.getCookies(), Auth.TOKEN_COOKIE));
+
         var cookie1 = new Cookie("username", null);
         cookie1.setPath("/");
         cookie1.setMaxAge(0);
 
         var cookie2 = new Cookie("password", null);
         cookie2.setPath("/");
-        cookie1.setMaxAge(0);
+        cookie2.setMaxAge(0);
 
         response.addCookie(cookie1);
         response.addCookie(cookie2);
+        response.addCookie(Auth.tokenCookie(null));
     }
 }
@@ -15,7 +15,6 @@ import fullforum.errhand.UnauthorizedException;
 import fullforum.services.IAuth;
 import fullforum.services.Snowflake;
 import org.hibernate.cfg.NotYetImplementedException;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -109,16 +108,13 @@ public class ArticlesController {
             return null;
         }
 
-        return QArticle.convert(article, null, modelMapper);
+        return QArticle.convert(article, null);
     }
 
 
     @PersistenceContext
     EntityManager entityManager;
 
-    @Autowired
-    ModelMapper modelMapper;
-
     // TODO: @RequestParam默认required=true, 所以包含可选参数的地方必须要设置required=false
     @GetMapping
     public List<QArticle> getArticles(
@@ -146,7 +142,7 @@ public class ArticlesController {
             var article = (Article) objs[0];
             var user = (User) objs[1];
 
-            var qarticle = QArticle.convert(article, Quser.convert(user, modelMapper), modelMapper);
+            var qarticle = QArticle.convert(article, Quser.convert(user));
             data.add(qarticle);
         }
 
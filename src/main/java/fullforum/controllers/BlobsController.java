@@ -1,13 +1,19 @@
 package fullforum.controllers;
 
-import fullforum.data.models.Blob2;
 import fullforum.data.repos.BlobRepository;
 import fullforum.dto.out.BatchUploadResult;
-import fullforum.errhand.BadRequestException;
-import fullforum.errhand.ErrorCode;
+import fullforum.errhand.NotFoundException;
+import fullforum.services.BlobUploadService;
+import fullforum.services.FileBlobStore;
+import fullforum.services.ImageVariantService;
 import fullforum.services.IAuth;
-import fullforum.services.Snowflake;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -15,10 +21,9 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.transaction.Transactional;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.stream.Collectors;
 
 @Transactional
 @RestController
@@ -26,8 +31,8 @@ import java.util.stream.Collectors;
 @Validated// PathVariable and params auto validation
 public class BlobsController {
 
-    @Autowired
-    Snowflake snowflake;
+    // 当前的Spring版本CacheControl还不支持immutable
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
 
     @Autowired
     IAuth auth;
@@ -35,45 +40,103 @@ public class BlobsController {
     @Autowired
     BlobRepository blobRepository;
 
-    // Note: spring默认限制1MB，所以如果要上传超过1mb，还要查阅文档去设置
+    @Autowired
+    FileBlobStore blobStore;
+
+    @Autowired
+    ImageVariantService imageVariantService;
+
+    @Autowired
+    BlobUploadService blobUploadService;
+
+    // Note: spring默认限制1MB，单个文件和整个请求的上限见spring.servlet.multipart，
+    // 它们应当大于fullforum.blob-upload.max-file-size，这样批量上传时超限的文件只影响它自己
     @PostMapping
     public String uploadFile(@RequestParam MultipartFile file) throws IOException {
-        if (file.getSize() > 1024 * 1024 * 10) {
-            // Bigger than 10MB
-            throw new BadRequestException(ErrorCode.FileTooLarge, "文件超过10MB了");
-        }
-
-        var blob = new Blob2(snowflake.nextId(), file.getBytes());
-        blobRepository.save(blob);
+        var blob = blobUploadService.upload(file);
 
         // 返回文件url：/api/blobs/123
         return "/api/blobs/" + blob.getId().toString();
     }
 
+    /**
+     * 内容从磁盘流式返回，不读入内存
+     * id对应的内容永远不变，所以ETag直接使用内容的hash，并允许客户端永久缓存。
+     * Range请求由Spring对Resource返回值的支持处理，返回206
+     * 指定w或h时返回不超过该尺寸的缩小图，原图已经足够小或不是图片时返回原图。
+     * 等待生成缩小图时不应占用数据库连接，所以不在事务中执行
+     */
     @GetMapping("{id}")
-    public ResponseEntity<byte[]> getFile(@PathVariable long id) {
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public ResponseEntity<Resource> getFile(
+            @PathVariable long id,
+            @RequestParam(required = false) @Min(1) @Max(ImageVariantService.MAX_DIMENSION) Integer w,
+            @RequestParam(required = false) @Min(1) @Max(ImageVariantService.MAX_DIMENSION) Integer h,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         var blob = blobRepository.findById(id).orElse(null);
-        return ResponseEntity.ok()
-                .contentType(MediaType.IMAGE_JPEG)
-                .body(blob.getData());
-    }
+        if (blob == null || blob.getContentHash() == null || !blobStore.exists(blob.getContentHash())) {
+            throw new NotFoundException("文件不存在");
+        }
+        var resize = w != null || h != null;
+        var etag = "\"" + blob.getContentHash() + (resize ? "-" + w + "x" + h : "") + "\"";
+        if (etagMatches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                    .build();
+        }
 
-    @PostMapping("batch-upload")
-    public BatchUploadResult batchUpload(@RequestParam("file") MultipartFile[] files) throws IOException {
-        var blobs = new ArrayList<Blob2>();
-        for (var file : files) {
-            var blob = new Blob2(snowflake.nextId(), file.getBytes());
-            blobRepository.save(blob);
-            blobs.add(blob);
+        if (resize) {
+            var variant = imageVariantService.getVariant(blob.getContentHash(), blob.getContentType(), w, h);
+            if (!variant.stable) {
+                // 暂时处理不过来，先返回原图，不让客户端缓存
+                return ResponseEntity.ok()
+                        .cacheControl(CacheControl.noCache())
+                        .header("X-Content-Type-Options", "nosniff")
+                        .contentType(MediaType.parseMediaType(blob.getContentType()))
+                        .body(new FileSystemResource(blobStore.pathOf(blob.getContentHash())));
+            }
+            if (variant.data != null) {
+                return ResponseEntity.ok()
+                        .eTag(etag)
+                        .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                        .header("X-Content-Type-Options", "nosniff")
+                        .contentType(MediaType.parseMediaType(variant.contentType))
+                        .body(new ByteArrayResource(variant.data));
+            }
         }
 
-        blobRepository.saveAll(blobs);
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                .header("X-Content-Type-Options", "nosniff")
+                .contentType(MediaType.parseMediaType(blob.getContentType()))
+                .contentLength(blob.getSize())
+                .body(new FileSystemResource(blobStore.pathOf(blob.getContentHash())));
+    }
 
-        var blobUrlList = blobs.stream().map(p -> "/api/blobs/" + p.getId().toString()).collect(Collectors.toList());
+    /**
+     * If-None-Match可以是 * 或逗号分隔的多个ETag，弱比较时忽略W/前缀
+     */
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (var candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        var result = new BatchUploadResult();
-        result.setData(blobUrlList);
-        return result;
+    @PostMapping("batch-upload")
+    public BatchUploadResult batchUpload(@RequestParam("file") MultipartFile[] files) {
+        return blobUploadService.uploadAll(files);
     }
 
 }
@@ -4,15 +4,21 @@ import fullforum.data.models.*;
 import fullforum.data.repos.*;
 import fullforum.dto.in.CreateCommentModel;
 import fullforum.dto.out.IdDto;
+import fullforum.dto.out.PageResult;
 import fullforum.dto.out.QComment;
+import fullforum.dto.out.QReply;
 import fullforum.dto.out.Quser;
 import fullforum.dto.out.UserPermission;
 import fullforum.errhand.ForbidException;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
+import fullforum.services.Cursor;
+import fullforum.services.DocumentPermissionService;
 import fullforum.services.IAuth;
+import fullforum.services.NotificationService;
+import fullforum.services.ProfileResolver;
 import fullforum.services.Snowflake;
-import org.modelmapper.ModelMapper;
+import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -21,13 +27,19 @@ import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
 import javax.validation.Valid;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Transactional
 @RestController
 @RequestMapping("/api/comments")
 @Validated
 public class CommentsController {
+    // getThreadedComments中每条评论附带的回复数上限
+    static final int REPLIES_PER_COMMENT = 5;
+
     @Autowired
     IAuth auth;
 
@@ -35,7 +47,7 @@ public class CommentsController {
     Snowflake snowflake;
 
     @Autowired
-    ModelMapper mapper;
+    ProfileResolver profileResolver;
 
     @Autowired
     EntityManager entityManager;
@@ -59,11 +71,14 @@ public class CommentsController {
     CommentRepository commentRepository;
 
     @Autowired
-    MessageRepository messageRepository;
+    NotificationService notificationService;
 
     @Autowired
     MembershipRepository membershipRepository;
 
+    @Autowired
+    DocumentPermissionService permissionService;
+
     @PostMapping
     public IdDto createComment(@RequestBody @Valid CreateCommentModel model) {
         if (!auth.isLoggedIn()) {
@@ -75,18 +90,15 @@ public class CommentsController {
         }
 
         //检查权限
-        var userPermission = getCurrentUserPermission(document.getId());
+        var userPermission = permissionService.getPermission(auth.userId(), document);
 
         if (userPermission.commentAccess.equals(Access.ReadWrite)) {
             var comment = new Comment(snowflake.nextId(), model.documentId, auth.userId(), model.content);
             commentRepository.save(comment);
 
             if (auth.userId() != document.getCreatorId()) {//只有来自他人的评论才通知文章作者
-                var message = new Message(snowflake.nextId(), -1L, document.getCreatorId());
-                message.setTitle("新评论通知");
-                message.setContent("你的文档 " + document.getTitle() + " 收到一条新评论");
-                message.setLink("/readFile/" + document.getId());
-                messageRepository.save(message);
+                notificationService.notify(NotificationService.SYSTEM_SENDER, document.getCreatorId(), "新评论通知",
+                        "你的文档 " + document.getTitle() + " 收到一条新评论", "/readFile/" + document.getId());
             }
             return new IdDto(comment.getId());
         } else {
@@ -109,8 +121,9 @@ public class CommentsController {
             throw new ForbidException("操作失败，你没有权限");
         }
 
-        commentRepository.deleteById(id);
+        thumbRepository.deleteByCommentId(id);
         replyRepository.deleteAllByCommentId(id);
+        commentRepository.deleteById(id);
     }
 
     @GetMapping("{id}")
@@ -123,10 +136,10 @@ public class CommentsController {
         if (comment == null) {
             throw new NotFoundException("评论不存在");
         }
-        var qUser = Quser.convert(userRepository.findById(comment.getUserId()).orElse(null), mapper);
-        var thumb = thumbRepository.findByUserIdAndTargetId(auth.userId(), comment.getId());
+        var qUser = Quser.convert(userRepository.findById(comment.getUserId()).orElse(null));
+        var thumb = thumbRepository.findByUserIdAndTargetIdAndType(auth.userId(), comment.getId(), TargetType.Comment);
 
-        return QComment.convert(comment, qUser, mapper, thumb);
+        return QComment.convert(comment, qUser, thumb);
     }
 
     @GetMapping
@@ -134,6 +147,106 @@ public class CommentsController {
             @RequestParam(required = false) Long documentId,
             @RequestParam(required = false) Long userId
     ) {
+        return queryComments(documentId, userId, null, null).getItems();
+    }
+
+    @GetMapping("page")
+    @ApiOperation("getComments的游标分页版本，按发表时间先后排序")
+    public PageResult<QComment> getCommentPage(
+            @RequestParam(required = false) Long documentId,
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return queryComments(documentId, userId, Cursor.decode(cursor), Cursor.normalizeLimit(limit));
+    }
+
+    @GetMapping("threaded")
+    @ApiOperation("分页返回文档的评论，每条评论最多附带最早的" + REPLIES_PER_COMMENT + "条回复，按发表时间先后排序。" +
+            "replyCount是回复总数，其余回复通过/api/replies/page获取。" +
+            "不论评论和回复有多少，都只用固定次数的查询组装")
+    public PageResult<QComment> getThreadedComments(
+            @RequestParam Long documentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        var pageLimit = Cursor.normalizeLimit(limit);
+        var results = findComments(documentId, null, Cursor.decode(cursor), pageLimit);
+        var nextCursor = Cursor.trimPage(results, pageLimit, c -> Cursor.ofId(c.getId()));
+        if (results.isEmpty()) {
+            return new PageResult<>(new ArrayList<>(), nextCursor);
+        }
+
+        var commentIds = results.stream().map(Comment::getId).collect(Collectors.toList());
+        var allReplies = findFirstReplies(commentIds, REPLIES_PER_COMMENT);
+
+        var authorIds = new ArrayList<Long>(results.size() + allReplies.size());
+        results.forEach(c -> authorIds.add(c.getUserId()));
+        allReplies.forEach(r -> authorIds.add(r.getUserId()));
+        var users = profileResolver.resolveUsers(authorIds, id -> id);
+        var myCommentThumbs = profileResolver.resolveThumbs(auth.userId(), TargetType.Comment, results, Comment::getId);
+        var myReplyThumbs = profileResolver.resolveThumbs(auth.userId(), TargetType.Reply, allReplies, Reply::getId);
+
+        var repliesByComment = new HashMap<Long, List<QReply>>();
+        for (var reply : allReplies) {
+            repliesByComment.computeIfAbsent(reply.getCommentId(), id -> new ArrayList<>())
+                    .add(QReply.convert(reply, users.get(reply.getUserId()), myReplyThumbs.get(reply.getId())));
+        }
+        var comments = new ArrayList<QComment>(results.size());
+        for (var comment : results) {
+            var qComment = QComment.convert(comment, users.get(comment.getUserId()), myCommentThumbs.get(comment.getId()));
+            qComment.setReplies(repliesByComment.getOrDefault(comment.getId(), new ArrayList<>()));
+            comments.add(qComment);
+        }
+        return new PageResult<>(comments, nextCursor);
+    }
+
+    /**
+     * 每条评论按回复时间取前perComment条。每条评论一个走(commentId, id)索引的子查询，
+     * 用union all合并成一条语句，热门评论的回复再多也不会全部读出来
+     */
+    @SuppressWarnings("unchecked")
+    private List<Reply> findFirstReplies(List<Long> commentIds, int perComment) {
+        var sql = new StringBuilder();
+        for (int i = 0; i < commentIds.size(); i++) {
+            if (i > 0) {
+                sql.append(" union all ");
+            }
+            sql.append("(select * from reply where comment_id = ?").append(i + 1)
+                    .append(" order by id limit ").append(perComment).append(")");
+        }
+        var query = entityManager.createNativeQuery(sql.toString(), Reply.class);
+        for (int i = 0; i < commentIds.size(); i++) {
+            query.setParameter(i + 1, commentIds.get(i));
+        }
+        List<Reply> replies = query.getResultList();
+        // union all不保证顺序
+        replies.sort(Comparator.comparing(Reply::getId));
+        return replies;
+    }
+
+    /**
+     * @param limit 为null时不分页
+     */
+    private PageResult<QComment> queryComments(Long documentId, Long userId, Cursor cursor, Integer limit) {
+        var results = findComments(documentId, userId, cursor, limit);
+        var nextCursor = Cursor.trimPage(results, limit, c -> Cursor.ofId(c.getId()));
+        var users = profileResolver.resolveUsers(results, Comment::getUserId);
+        var myThumbs = profileResolver.resolveThumbs(auth.userId(), TargetType.Comment, results, Comment::getId);
+
+        List<QComment> comments = new ArrayList<>();
+        for (var comment : results) {
+            var qUser = users.get(comment.getUserId());
+            comments.add(QComment.convert(comment, qUser, myThumbs.get(comment.getId())));
+        }
+        return new PageResult<>(comments, nextCursor);
+    }
+
+    /**
+     * snowflake id随时间递增，按id排序即按发表时间排序
+     * 没有文档的评论权限时返回空列表；分页时多取一条，用于判断是否还有下一页
+     */
+    private List<Comment> findComments(Long documentId, Long userId, Cursor cursor, Integer limit) {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
@@ -144,56 +257,28 @@ public class CommentsController {
                 return new ArrayList<>();
             }
 
-            var userPermission = getCurrentUserPermission(documentId);
+            var userPermission = permissionService.getPermission(auth.userId(), document);
             if (userPermission.commentAccess == Access.None) {
                 return new ArrayList<>();
             }
 
         }
-        List<QComment> comments = new ArrayList<>();
 
         var query = entityManager.createQuery(
-                "select c, t from Comment c left join Thumb t " +
-                        " on (t.userId=:meId and c.id = t.targetId)" +
+                "select c from Comment c" +
                         " where (:documentId is null or c.documentId = :documentId)" +
-                        " and (:userId is null or c.userId = :userId)")
+                        " and (:userId is null or c.userId = :userId)" +
+                        (cursor == null ? "" : " and c.id > :cursorId") +
+                        " order by c.id", Comment.class)
                 .setParameter("documentId", documentId)
-                .setParameter("userId", userId)
-                .setParameter("meId", auth.userId());
-
-        var results = query.getResultList();
-
-        for (var result : results) {
-            var objs = (Object[]) result;
-            var comment = (Comment) (objs)[0];
-            Thumb thumb;
-            if (objs[1] != null) {
-                thumb = (Thumb) objs[1];
-            } else {
-                thumb = null;
-            }
-            var qUser = Quser.convert(userRepository.findById(comment.getUserId()).orElse(null), mapper);
-            comments.add(QComment.convert(comment, qUser, mapper, thumb));
+                .setParameter("userId", userId);
+        if (cursor != null) {
+            query.setParameter("cursorId", cursor.id);
         }
-        return comments;
-    }
-
-
-    private AccessorLevel getAccessorLevel(Document document, long accessorId) {
-        if (accessorId == document.getCreatorId()) {
-            return AccessorLevel.self;
-        }
-
-        if (document.getTeamId() == null) {
-            return AccessorLevel.publicLevel;
-        }
-
-        var membership = membershipRepository.findByUserIdAndTeamId(accessorId, document.getTeamId());
-        if (membership != null) {
-            return AccessorLevel.teamMember;
-        } else {
-            return AccessorLevel.publicLevel;
+        if (limit != null) {
+            query.setMaxResults(limit + 1);
         }
+        return query.getResultList();
     }
 
     @GetMapping("/permission/{id}")
@@ -201,30 +286,7 @@ public class CommentsController {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
-        var document = documentRepository.findById(id).orElse(null);
-        if (document == null) {
-            throw new NotFoundException("文档不存在");
-        }
-
-        // 获取当前用户与文章的关系：(AccesserLevel)
-        var level = getAccessorLevel(document, auth.userId());
-
-        if (level == AccessorLevel.self) {
-            return new UserPermission(auth.userId(), Access.ReadWrite, Access.ReadWrite, true);
-        }
-
-        if (level == AccessorLevel.teamMember) {
-            return new UserPermission(auth.userId(), document.getTeamDocumentAccess(),
-                    document.getTeamCommentAccess(), document.getTeamCanShare());
-        }
-
-        // public
-        return new UserPermission(auth.userId(), document.getPublicDocumentAccess(),
-                document.getPublicCommentAccess(), document.getPublicCanShare());
-    }
-
-    private enum AccessorLevel {
-        publicLevel, teamMember, self
+        return permissionService.getPermission(auth.userId(), id);
     }
 
 }
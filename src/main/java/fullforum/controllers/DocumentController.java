@@ -1,45 +1,60 @@
 package fullforum.controllers;
 
 import fullforum.data.models.Access;
-import fullforum.data.models.Comment;
 import fullforum.data.models.Document;
-import fullforum.data.models.ViewRecord;
 import fullforum.data.repos.*;
 import fullforum.dto.in.CreateDocumentModel;
+import fullforum.dto.in.DocumentDeltaModel;
 import fullforum.dto.in.PatchDocumentModel;
+import fullforum.dto.out.DocumentEvent;
 import fullforum.dto.out.IdDto;
+import fullforum.dto.out.ModifyCountDto;
+import fullforum.dto.out.PageResult;
 import fullforum.dto.out.QDocument;
 import fullforum.dto.out.UserPermission;
+import fullforum.errhand.BadRequestException;
+import fullforum.errhand.ConflictException;
+import fullforum.errhand.ErrorCode;
 import fullforum.errhand.ForbidException;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
+import fullforum.services.Cursor;
+import fullforum.services.DocumentEventHub;
+import fullforum.services.DocumentPermissionService;
+import fullforum.services.EditLockManager;
 import fullforum.services.IAuth;
 import fullforum.services.Snowflake;
-import org.modelmapper.ModelMapper;
+import fullforum.services.ViewRecordBuffer;
+import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
 import javax.validation.Valid;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Transactional
 @RestController
 @RequestMapping("/api/documents")
 @Validated// PathVariable and params auto validation
 public class DocumentController {
+    private static final int RECENT_LIMIT = 15;
+
     @Autowired
     Snowflake snowflake;
 
     @Autowired
     IAuth auth;
 
-    @Autowired
-    ModelMapper modelMapper;
-
     @Autowired
     EntityManager entityManager;
 
@@ -61,11 +76,32 @@ public class DocumentController {
     @Autowired
     MembershipRepository membershipRepository;
 
+    @Autowired
+    EditLockManager editLockManager;
+
+    @Autowired
+    DocumentBodyRepository documentBodyRepository;
+
+    @Autowired
+    ThumbRepository thumbRepository;
+
+    @Autowired
+    FavoriteRepository favoriteRepository;
+
     @Autowired
     ViewRecordRepository viewRecordRepository;
 
     @Autowired
-    ELockRepository eLockRepository;
+    ELockRepository elockRepository;
+
+    @Autowired
+    DocumentEventHub eventHub;
+
+    @Autowired
+    DocumentPermissionService permissionService;
+
+    @Autowired
+    ViewRecordBuffer viewRecordBuffer;
 
 
     @PostMapping
@@ -75,10 +111,12 @@ public class DocumentController {
         }
         var document = new Document(snowflake.nextId(), auth.userId(), model.title, model.description, model.data);
         documentRepository.save(document);
+        editLockManager.prepare(document.getId());
         return new IdDto(document.getId());
     }
 
     @PatchMapping("{id}")
+    @ApiOperation("保存文档，baseModifyCount不是最新版本或保存期间被其他人修改时返回409")
     public void patchDocument(@RequestBody @Valid PatchDocumentModel model, @PathVariable long id) {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
@@ -88,14 +126,24 @@ public class DocumentController {
             throw new NotFoundException("文档不存在");
         }
         //检查权限
-        var userPermission = getCurrentUserPermission(id);
+        var userPermission = permissionService.getPermission(auth.userId(), document);
+        var accessBefore = DocumentPermissionService.accessFingerprint(document);
+
+        // 全量保存同样按modifyCount条件更新，与其他保存（包括增量保存）互斥，避免覆盖别人的修改
+        var baseModifyCount = model.baseModifyCount == null ? document.getModifyCount() : model.baseModifyCount;
+        if (document.getModifyCount() != baseModifyCount || documentRepository.claimModifyCount(
+                id, auth.userId(), System.currentTimeMillis(), baseModifyCount) == 0) {
+            throw new ConflictException("文档已被修改，请先获取最新版本");
+        }
 
         if (model.data != null || model.title != null || model.description != null) {
             // 想要修改这几项
             if (userPermission.documentAccess != Access.ReadWrite) {
                 throw new ForbidException("你没有权限");
             }
-            document.setData(model.data == null ? document.getData() : model.data);
+            if (model.data != null) {
+                document.setData(model.data);
+            }
             document.setTitle(model.title == null ? document.getTitle() : model.title);
             document.setDescription(model.description == null ? document.getDescription() : model.description);
         }
@@ -155,16 +203,59 @@ public class DocumentController {
         }
 
         document.updatedAtNow();
+        // 与上面的条件更新一致，flush时写入的是base + 1
         document.setModifyCountAndModifier(auth.userId());
         documentRepository.save(document);
+        eventHub.publish(DocumentEvent.documentUpdated(id, document.getLastModifierId(), document.getModifyCount()));
+        if (!accessBefore.equals(DocumentPermissionService.accessFingerprint(document))) {
+            permissionService.invalidateDocument(id);
+        }
+
+        // 尝试释放锁
+        editLockManager.release(id, auth.userId());
+    }
+
+    @PatchMapping("{id}/delta")
+    @ApiOperation("增量保存文档内容，baseModifyCount不是最新版本时返回409")
+    public ModifyCountDto patchDocumentDelta(@RequestBody @Valid DocumentDeltaModel model, @PathVariable long id) {
+        if (!auth.isLoggedIn()) {
+            throw new UnauthorizedException();
+        }
+        var document = documentRepository.findById(id).orElse(null);
+        if (document == null) {
+            throw new NotFoundException("文档不存在");
+        }
+        var userPermission = permissionService.getPermission(auth.userId(), document);
+        if (userPermission.documentAccess != Access.ReadWrite) {
+            throw new ForbidException("你没有权限");
+        }
+        if (document.getModifyCount() != model.baseModifyCount) {
+            throw new ConflictException("文档已被修改，请先获取最新版本");
+        }
 
-        // 尝试释放锁 TODO: test
-        var lock = eLockRepository.findELockByDocumentId(id);
-        if (lock != null) {
-            var uid = auth.userId();
-            lock.tryRelease(uid);
-            eLockRepository.save(lock);
+        var data = applyOps(document.getData(), model.ops);
+        var now = System.currentTimeMillis();
+        var updated = documentRepository.bumpModifyCountIfUnchanged(id, auth.userId(), now, model.baseModifyCount);
+        if (updated == 0) {
+            // 读取之后被其他人抢先保存了
+            throw new ConflictException("文档已被修改，请先获取最新版本");
         }
+        documentBodyRepository.updateData(id, data, now);
+
+        var modifyCount = model.baseModifyCount + 1;
+        eventHub.publish(DocumentEvent.documentUpdated(id, auth.userId(), modifyCount));
+        return new ModifyCountDto(modifyCount);
+    }
+
+    private static String applyOps(String data, List<DocumentDeltaModel.SpliceOp> ops) {
+        var text = new StringBuilder(data == null ? "" : data);
+        for (var op : ops) {
+            if (op.index > text.length() || op.deleteCount > text.length() - op.index) {
+                throw new BadRequestException(ErrorCode.InvalidOperation, "增量操作超出了文档范围");
+            }
+            text.replace(op.index, op.index + op.deleteCount, op.insert == null ? "" : op.insert);
+        }
+        return text.toString();
     }
 
     @DeleteMapping("{id}")
@@ -180,13 +271,17 @@ public class DocumentController {
             throw new ForbidException("操作失败，你没有权限");
         }
 
-        var comments = commentRepository.findAllByDocumentId(id);
-        for (Comment comment : comments) {
-            commentRepository.deleteById(comment.getId());
-            replyRepository.deleteAllByCommentId(comment.getId());
-        }
-
+        // 依附于文档的数据各用一条批量语句删除，与评论数量无关；点赞要在评论和回复之前删
+        thumbRepository.deleteByDocumentId(id);
+        replyRepository.deleteByDocumentId(id);
+        commentRepository.deleteByDocumentId(id);
+        favoriteRepository.deleteByDocumentId(id);
+        viewRecordRepository.deleteByDocumentId(id);
+        elockRepository.deleteByDocumentId(id);
         documentRepository.deleteById(id);
+        permissionService.invalidateDocument(id);
+        editLockManager.forget(id);
+        viewRecordBuffer.forgetDocument(id);
     }
 
     @GetMapping("{id}")
@@ -200,22 +295,16 @@ public class DocumentController {
             return null;
         }
 
-        var viewRecord = viewRecordRepository.findByDocumentIdAndUserId(document.getId(), auth.userId());
-        if (viewRecord == null) {
-            viewRecord = new ViewRecord(snowflake.nextId(), auth.userId(), document.getId());
-        } else {
-            viewRecord.updatedAtNow();
-        }
-
+        // 浏览记录先写入缓冲，由ViewRecordBuffer批量落库
         if (document.getCreatorId() == auth.userId()) {
-            viewRecordRepository.save(viewRecord);
-            return QDocument.convert(document, modelMapper);
+            viewRecordBuffer.record(auth.userId(), document.getId());
+            return QDocument.convert(document);
         }
 
-        var userPermission = getCurrentUserPermission(document.getId());
+        var userPermission = permissionService.getPermission(auth.userId(), document);
         if (userPermission.documentAccess != Access.None) {
-            viewRecordRepository.save(viewRecord);
-            return QDocument.convert(document, modelMapper);
+            viewRecordBuffer.record(auth.userId(), document.getId());
+            return QDocument.convert(document);
         } else {
             throw new ForbidException("操作失败，你没有权限");
         }
@@ -223,6 +312,7 @@ public class DocumentController {
 
 
     @GetMapping
+    @ApiOperation("列表中的文档不含正文(data为null)，正文通过GET /api/documents/{id}获取")
     public List<QDocument> getDocuments(
             @RequestParam(required = false) Long creatorId,
             @RequestParam(required = false) Long teamId,
@@ -230,93 +320,149 @@ public class DocumentController {
             @RequestParam(required = false) Boolean isAbandoned,
             @RequestParam(required = false) Boolean recent
     ) {
+        return queryDocuments(creatorId, teamId, myfavorite, isAbandoned, recent, null, null).getItems();
+    }
+
+    @GetMapping("page")
+    @ApiOperation("getDocuments的游标分页版本。recent不分页，固定返回最近15条")
+    public PageResult<QDocument> getDocumentPage(
+            @RequestParam(required = false) Long creatorId,
+            @RequestParam(required = false) Long teamId,
+            @RequestParam(required = false) Boolean myfavorite,
+            @RequestParam(required = false) Boolean isAbandoned,
+            @RequestParam(required = false) Boolean recent,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return queryDocuments(creatorId, teamId, myfavorite, isAbandoned, recent,
+                Cursor.decode(cursor), Cursor.normalizeLimit(limit));
+    }
+
+    /**
+     * @param limit 为null时不分页
+     */
+    private PageResult<QDocument> queryDocuments(Long creatorId, Long teamId, Boolean myfavorite,
+                                                 Boolean isAbandoned, Boolean recent, Cursor cursor, Integer limit) {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
-        List results;
         List<QDocument> documents = new ArrayList<>();
+        Set<Long> myTeamIds = null;// 当前用户所在的团队，按需加载一次
+        var favoriteOnly = myfavorite != null && myfavorite;
+        var abandonedOnly = !favoriteOnly && isAbandoned != null && isAbandoned;
+        var recentOnly = !favoriteOnly && !abandonedOnly && recent != null && recent;
 
-        if (myfavorite != null && myfavorite) { //返回当前用户收藏的文档
-            var query = entityManager.createQuery(
-                    "select d from Document d join Favorite f" +
-                            " on d.id = f.documentId" +
-                            " where f.userId = :userId" +
-                            " and d.isAbandoned = false" +
-                            " order by d.updatedAt desc ")
-                    .setParameter("userId", auth.userId());
-            results = query.getResultList();
-        } else if (isAbandoned != null && isAbandoned) { //返回当前用户回收站内文档
+        if (recentOnly) { //返回当前用户最近浏览的文档
             var query = entityManager.createQuery(
-                    "select d from Document d" +
-                            " where d.creatorId = :userId " +
-                            " and d.isAbandoned = true" +
-                            " order by d.updatedAt desc ")
-                    .setParameter("userId", auth.userId());
-            results = query.getResultList();
-        } else if (recent != null && recent) { //返回当前用户最近浏览的文档
-            var query = entityManager.createQuery(
-                    "select d from Document d join ViewRecord v" +
+                    "select d, v.updatedAt from Document d join ViewRecord v" +
                             " on d.id = v.documentId" +
                             " where (v.userId = :userId)" +
                             " and d.isAbandoned = false" +
-                            " order by v.updatedAt desc ")
-                    .setParameter("userId", auth.userId());
-            results = query.getResultList();
-            for (var result : results) {
-                var document = (Document) result;
-                documents.add(QDocument.convert(document, modelMapper));
-                if (documents.size() >= 15) {
-                    break;
+                            " order by v.updatedAt desc ", Object[].class)
+                    .setParameter("userId", auth.userId())
+                    .setMaxResults(RECENT_LIMIT);
+            // 合并缓冲中还没有落库的浏览记录，同一文档取较晚的浏览时间
+            var viewedAt = new HashMap<Long, Long>();
+            var recentDocuments = new HashMap<Long, Document>();
+            for (var row : query.getResultList()) {
+                var document = (Document) row[0];
+                recentDocuments.put(document.getId(), document);
+                viewedAt.merge(document.getId(), (Long) row[1], Math::max);
+            }
+            var pending = viewRecordBuffer.pendingFor(auth.userId());
+            pending.forEach((documentId, at) -> viewedAt.merge(documentId, at, Math::max));
+            var missing = new HashSet<>(pending.keySet());
+            missing.removeAll(recentDocuments.keySet());
+            for (var document : documentRepository.findAllById(missing)) {
+                if (!Boolean.TRUE.equals(document.getIsAbandoned())) {
+                    recentDocuments.put(document.getId(), document);
                 }
             }
-            return documents;
+            recentDocuments.values().stream()
+                    .sorted(Comparator.comparing((Document d) -> viewedAt.get(d.getId())).reversed())
+                    .limit(RECENT_LIMIT)
+                    .forEach(document -> documents.add(QDocument.convertSummary(document)));
+            return new PageResult<>(documents, null);
+        }
+
+        // 按(updatedAt, id)倒序，游标条件 (d.updatedAt, d.id) < (:cursorTs, :cursorId)
+        var jpql = new StringBuilder();
+        if (favoriteOnly) { //返回当前用户收藏的文档
+            jpql.append("select d from Document d join Favorite f" +
+                    " on d.id = f.documentId" +
+                    " where f.userId = :userId" +
+                    " and d.isAbandoned = false");
+        } else if (abandonedOnly) { //返回当前用户回收站内文档
+            jpql.append("select d from Document d" +
+                    " where d.creatorId = :userId " +
+                    " and d.isAbandoned = true");
         } else { //根据
             if (teamId != null) {
-                var membership = membershipRepository.findByUserIdAndTeamId(auth.userId(), teamId);
-                if (membership == null) {
+                myTeamIds = permissionService.findTeamIds(auth.userId());
+                if (!myTeamIds.contains(teamId)) {
                     throw new ForbidException("操作失败，你不在团队中");
                 }
             }
-            var query = entityManager.createQuery(
-                    "select d from Document d" +
-                            " where (:creatorId is null or d.creatorId = :creatorId)" +
-                            " and (:teamId is null or d.teamId = :teamId)" +
-                            " and d.isAbandoned = false" +
-                            " order by d.updatedAt desc ")
-                    .setParameter("creatorId", creatorId)
-                    .setParameter("teamId", teamId);
-            results = query.getResultList();
+            jpql.append("select d from Document d" +
+                    " where (:creatorId is null or d.creatorId = :creatorId)" +
+                    " and (:teamId is null or d.teamId = :teamId)" +
+                    " and d.isAbandoned = false");
+        }
+        if (cursor != null) {
+            jpql.append(" and (d.updatedAt < :cursorTs or (d.updatedAt = :cursorTs and d.id < :cursorId))");
         }
+        jpql.append(" order by d.updatedAt desc, d.id desc");
 
-        for (var result : results) {
-            var document = (Document) result;
+        var query = entityManager.createQuery(jpql.toString(), Document.class);
+        if (favoriteOnly || abandonedOnly) {
+            query.setParameter("userId", auth.userId());
+        } else {
+            query.setParameter("creatorId", creatorId).setParameter("teamId", teamId);
+        }
+        if (cursor != null) {
+            query.setParameter("cursorTs", cursor.timestamp).setParameter("cursorId", cursor.id);
+        }
+        if (limit != null) {
+            query.setMaxResults(limit + 1);
+        }
+        var results = query.getResultList();
+        var nextCursor = Cursor.trimPage(results, limit, d -> new Cursor(d.getUpdatedAt(), d.getId()));
+
+        // 权限在内存中根据已查出的文档计算，不再逐行查询数据库
+        // 分页时无权限的文档被过滤掉，所以一页的数量可能少于limit
+        for (var document : results) {
             if (auth.userId() != document.getCreatorId()) {//非文档创建者
-                var permission = getCurrentUserPermission(document.getId());
+                if (myTeamIds == null) {
+                    myTeamIds = permissionService.findTeamIds(auth.userId());
+                }
+                var permission = permissionService.computePermission(document, auth.userId(), myTeamIds);
                 if (permission.documentAccess != Access.None) {
-                    documents.add(QDocument.convert(document, modelMapper));
+                    documents.add(QDocument.convertSummary(document));
                 }
             } else {
-                documents.add(QDocument.convert(document, modelMapper));
+                documents.add(QDocument.convertSummary(document));
             }
         }
-        return documents;
+        return new PageResult<>(documents, nextCursor);
     }
 
-    private AccessorLevel getAccessorLevel(Document document, long accessorId) {
-        if (accessorId == document.getCreatorId()) {
-            return AccessorLevel.self;
+    @GetMapping(value = "{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ApiOperation("订阅文档的锁和修改事件(SSE)，订阅时若有人持有锁会先收到一条lockAcquired")
+    public SseEmitter subscribeEvents(@PathVariable long id) {
+        if (!auth.isLoggedIn()) {
+            throw new UnauthorizedException();
         }
-
-        if (document.getTeamId() == null) {
-            return AccessorLevel.publicLevel;
+        var userPermission = permissionService.getPermission(auth.userId(), id);
+        if (userPermission.documentAccess == Access.None) {
+            throw new ForbidException("你没有权限");
         }
 
-        var membership = membershipRepository.findByUserIdAndTeamId(accessorId, document.getTeamId());
-        if (membership != null) {
-            return AccessorLevel.teamMember;
-        } else {
-            return AccessorLevel.publicLevel;
+        var emitter = eventHub.subscribe(id);
+        var ownerId = editLockManager.getOwner(id);
+        if (ownerId != null) {
+            eventHub.sendTo(emitter, DocumentEvent.lockAcquired(id, ownerId));
         }
+        return emitter;
     }
 
     @GetMapping("/permission/{id}")
@@ -324,29 +470,6 @@ public class DocumentController {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
-        var document = documentRepository.findById(id).orElse(null);
-        if (document == null) {
-            throw new NotFoundException("文档不存在");
-        }
-
-        // 获取当前用户与文章的关系：(AccesserLevel)
-        var level = getAccessorLevel(document, auth.userId());
-
-        if (level == AccessorLevel.self) {
-            return new UserPermission(auth.userId(), Access.ReadWrite, Access.ReadWrite, true);
-        }
-
-        if (level == AccessorLevel.teamMember) {
-            return new UserPermission(auth.userId(), document.getTeamDocumentAccess(),
-                    document.getTeamCommentAccess(), document.getTeamCanShare());
-        }
-
-        // public
-        return new UserPermission(auth.userId(), document.getPublicDocumentAccess(),
-                document.getPublicCommentAccess(), document.getPublicCanShare());
+        return permissionService.getPermission(auth.userId(), id);
     }
 }
-
-enum AccessorLevel {
-    publicLevel, teamMember, self
-}
@@ -1,17 +1,15 @@
 package fullforum.controllers;
 
-import fullforum.data.models.ELock;
 import fullforum.data.repos.DocumentRepository;
-import fullforum.data.repos.ELockRepository;
 import fullforum.data.repos.UserRepository;
 import fullforum.dto.out.AcquireLockResult;
 import fullforum.dto.out.Quser;
 import fullforum.errhand.BadRequestException;
 import fullforum.errhand.ErrorCode;
 import fullforum.errhand.UnauthorizedException;
+import fullforum.services.EditLockManager;
 import fullforum.services.IAuth;
 import fullforum.services.Snowflake;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -30,7 +28,7 @@ public class ELockController {
     IAuth auth;
 
     @Autowired
-    ELockRepository elockRepository;
+    EditLockManager editLockManager;
 
     @Autowired
     DocumentRepository documentRepository;
@@ -38,39 +36,28 @@ public class ELockController {
     @Autowired
     UserRepository userRepository;
 
-    @Autowired
-    ModelMapper modelMapper;
-
-    // TODO: 写测试
+    /**
+     * 编辑器定时调用以续期。不开启事务，续期时不访问数据库
+     */
     @PostMapping("acquire")
+    @Transactional(Transactional.TxType.SUPPORTS)
     public AcquireLockResult acquireLock(@RequestParam Long documentId) {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
 
-        var document = documentRepository.findById(documentId).orElse(null);
-
-        if (document == null) {
-            throw new BadRequestException(ErrorCode.EntityNotExist, "文档不存在");
-        }
-
         // 为了省事，不确认用户是否有权限修改这个文档
 
-        var lock = elockRepository.findELockByDocumentId(documentId);
-
-        if (lock == null) {
-            lock = new ELock(snowflake.nextId(), documentId);
-        }
+        var lease = editLockManager.tryAcquire(documentId, auth.userId());
 
-        if (lock.tryAcquire(auth.userId())) {
+        if (lease.isOwnedBy(auth.userId())) {
             // success
-            elockRepository.save(lock);
             var result = new AcquireLockResult(true, null);
             return result;
         } else {
             // failure. return the owner info
-            var owner = userRepository.findById(lock.getLastOwnerId()).orElseThrow();
-            var result = new AcquireLockResult(false, Quser.convert(owner, modelMapper));
+            var owner = userRepository.findById(lease.getOwnerId()).orElseThrow();
+            var result = new AcquireLockResult(false, Quser.convert(owner));
             return result;
         }
     }
@@ -81,43 +68,27 @@ public class ELockController {
             throw new UnauthorizedException();
         }
 
-        var document = documentRepository.findById(documentId).orElse(null);
-
-        if (document == null) {
-            throw new BadRequestException(ErrorCode.EntityNotExist, "文档不存在");
-        }
-
-        var lock = elockRepository.findELockByDocumentId(documentId);
-        if (lock == null) {
-            return null;
-        }
-
-        var ownerId = lock.getRealOwnerId();
+        var ownerId = editLockManager.getOwner(documentId);
 
         if (ownerId == null) {
+            if (!documentRepository.existsById(documentId)) {
+                throw new BadRequestException(ErrorCode.EntityNotExist, "文档不存在");
+            }
             return null;
         }
 
         var owner = userRepository.findById(ownerId).orElseThrow();
 
-        return Quser.convert(owner, modelMapper);
+        return Quser.convert(owner);
     }
 
-    // TODO: 写测试
     @PostMapping("release")
     public void releaseLock(@RequestParam Long documentId) {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
 
-        var lock = elockRepository.findELockByDocumentId(documentId);
-
-        if (lock == null) {
-            return;
-        }
-
-        lock.tryRelease(auth.userId());
-        elockRepository.save(lock);
+        editLockManager.release(documentId, auth.userId());
     }
 
 }
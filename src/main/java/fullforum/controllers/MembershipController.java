@@ -1,9 +1,7 @@
 package fullforum.controllers;
 
 import fullforum.data.models.Membership;
-import fullforum.data.models.Message;
 import fullforum.data.repos.MembershipRepository;
-import fullforum.data.repos.MessageRepository;
 import fullforum.data.repos.TeamRepository;
 import fullforum.data.repos.UserRepository;
 import fullforum.dto.out.QMembership;
@@ -12,10 +10,12 @@ import fullforum.dto.out.Quser;
 import fullforum.errhand.ForbidException;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
+import fullforum.services.DocumentPermissionService;
 import fullforum.services.IAuth;
+import fullforum.services.NotificationService;
+import fullforum.services.ProfileResolver;
 import fullforum.services.Snowflake;
 import io.swagger.annotations.ApiOperation;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -34,7 +34,7 @@ public class MembershipController {
     IAuth auth;
 
     @Autowired
-    ModelMapper mapper;
+    ProfileResolver profileResolver;
 
     @Autowired
     Snowflake snowflake;
@@ -52,7 +52,10 @@ public class MembershipController {
     UserRepository userRepository;
 
     @Autowired
-    MessageRepository messageRepository;
+    NotificationService notificationService;
+
+    @Autowired
+    DocumentPermissionService permissionService;
 
 
     // 没有POST，因为membership由[同意请求]顺带添加
@@ -71,27 +74,24 @@ public class MembershipController {
         var team = teamRepository.findById(membership.getTeamId()).orElse(null);
         assert team != null;//若team 为null则membership也为null
 
-        var message = new Message(snowflake.nextId(), -1L, membership.getUserId());
         if (auth.userId() == membership.getUserId()) {
             if (auth.userId() == team.getLeaderId()) {// 组长不能踢出自己
                 throw new ForbidException("操作失败，队长不能退出团队");
             }
             membershipRepository.deleteById(id);
             //自己主动退出团队的通知
-            message.setTitle("退出团队通知");
-            message.setContent("你已成功退出团队 " + team.getName());
+            notificationService.notify(NotificationService.SYSTEM_SENDER, membership.getUserId(), "退出团队通知",
+                    "你已成功退出团队 " + team.getName(), null);
         } else {
             if (auth.userId() != team.getLeaderId()) {
                 throw new ForbidException("操作失败，你没有权限");
             }
             membershipRepository.deleteById(id);
             //被踢出团队的通知
-            message.setSenderId(team.getLeaderId());
-            message.setTitle("踢出团队通知");
-            message.setContent("你已被踢出团队 " + team.getName());
+            notificationService.notify(team.getLeaderId(), membership.getUserId(), "踢出团队通知",
+                    "你已被踢出团队 " + team.getName(), null);
         }
-        messageRepository.save(message);
-
+        permissionService.invalidateUser(membership.getUserId());
     }
 
     @GetMapping("{id}")
@@ -103,10 +103,10 @@ public class MembershipController {
         if (membership == null) {
             throw new NotFoundException("记录不存在");
         }
-        var qUser = Quser.convert(userRepository.findById(membership.getUserId()).orElse(null), mapper);
-        var qTeam = QTeam.convert(teamRepository.findById(membership.getTeamId()).orElse(null), mapper);
+        var qUser = Quser.convert(userRepository.findById(membership.getUserId()).orElse(null));
+        var qTeam = QTeam.convert(teamRepository.findById(membership.getTeamId()).orElse(null));
 
-        return QMembership.convert(membership, mapper, qUser, qTeam);
+        return QMembership.convert(membership, qUser, qTeam);
     }
 
     @GetMapping
@@ -121,16 +121,17 @@ public class MembershipController {
         var query = entityManager.createQuery(
                 "select m from Membership m" +
                         " where (:userId is null or m.userId = :userId)" +
-                        " and (:teamId is null or m.teamId = :teamId)")
+                        " and (:teamId is null or m.teamId = :teamId)", Membership.class)
                 .setParameter("userId", userId)
                 .setParameter("teamId", teamId);
         var results = query.getResultList();
-        for (var result:results) {
-            var membership = (Membership) result;
-            var qUser = Quser.convert(userRepository.findById(membership.getUserId()).orElse(null), mapper);
-            var qTeam = QTeam.convert(teamRepository.findById(membership.getTeamId()).orElse(null), mapper);
+        var users = profileResolver.resolveUsers(results, Membership::getUserId);
+        var teams = profileResolver.resolveTeams(results, Membership::getTeamId);
+        for (var membership : results) {
+            var qUser = users.get(membership.getUserId());
+            var qTeam = teams.get(membership.getTeamId());
 
-            qMemberships.add(QMembership.convert(membership, mapper, qUser, qTeam));
+            qMemberships.add(QMembership.convert(membership, qUser, qTeam));
         }
         return qMemberships;
 
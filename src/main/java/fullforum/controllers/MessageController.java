@@ -5,14 +5,20 @@ import fullforum.data.repos.*;
 import fullforum.dto.in.BatchMarkReadModel;
 import fullforum.dto.in.CreateMessageModel;
 import fullforum.dto.out.IdDto;
+import fullforum.dto.out.PageResult;
 import fullforum.dto.out.QMessage;
 import fullforum.dto.out.Quser;
+import fullforum.dto.out.UnreadCountDto;
+import fullforum.dto.out.UpdatedCountDto;
 import fullforum.errhand.ForbidException;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
+import fullforum.services.Cursor;
 import fullforum.services.IAuth;
+import fullforum.services.ProfileResolver;
 import fullforum.services.Snowflake;
-import org.modelmapper.ModelMapper;
+import fullforum.services.UnreadMessageCounter;
+import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -21,6 +27,7 @@ import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
 import javax.validation.Valid;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 @Transactional
@@ -35,7 +42,7 @@ public class MessageController {
     Snowflake snowflake;
 
     @Autowired
-    ModelMapper mapper;
+    ProfileResolver profileResolver;
 
     @Autowired
     EntityManager entityManager;
@@ -55,6 +62,9 @@ public class MessageController {
     @Autowired
     MembershipRepository membershipRepository;
 
+    @Autowired
+    UnreadMessageCounter unreadCounter;
+
 
     @PostMapping
     public IdDto createMessage(@RequestBody CreateMessageModel model) {
@@ -70,6 +80,7 @@ public class MessageController {
         message.setTitle(model.title);
         message.setContent(model.content);
         messageRepository.save(message);
+        unreadCounter.adjust(message.getReceiverId(), 1);
 
         return new IdDto(message.getId());
     }
@@ -87,37 +98,51 @@ public class MessageController {
             throw new ForbidException("操作失败，你没有权限");
         }
         messageRepository.deleteById(id);
+        if (!message.getHaveRead()) {
+            unreadCounter.adjust(message.getReceiverId(), -1);
+        }
     }
 
     @PostMapping("batch-mark-read")
-    public void batchMarkRead(@RequestBody @Valid BatchMarkReadModel model) {
+    @ApiOperation("返回实际从未读变为已读的消息数")
+    public UpdatedCountDto batchMarkRead(@RequestBody @Valid BatchMarkReadModel model) {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
-        for (var id : model.ids) {
-            var message = messageRepository.findById(id).orElse(null);
-            if (message == null) {
-                throw new NotFoundException("消息不存在");
-            }
-            if (message.getReceiverId() != auth.userId()) {
-                throw new ForbidException("你没有权限");
-            }
-            message.setHaveRead(true);
-            messageRepository.save(message);
+        var ids = new HashSet<>(model.ids);
+        if (ids.isEmpty()) {
+            return new UpdatedCountDto(0);
+        }
+        var counts = messageRepository.countOwned(ids, auth.userId()).get(0);
+        if (((Number) counts[0]).intValue() < ids.size()) {
+            throw new NotFoundException("消息不存在");
+        }
+        if (((Number) counts[1]).intValue() < ids.size()) {
+            throw new ForbidException("你没有权限");
         }
+        var updated = messageRepository.markRead(ids, auth.userId());
+        unreadCounter.adjust(auth.userId(), -updated);
+        return new UpdatedCountDto(updated);
     }
 
 
     @PatchMapping()//设置用户当前所有消息为已读
-    public void readAllMessages() {
+    public UpdatedCountDto readAllMessages() {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
-        var messages = messageRepository.findAllByReceiverIdAndHaveRead(auth.userId(), false);
-        for (var message : messages) {
-            message.setHaveRead(true);
-            messageRepository.save(message);
+        var updated = messageRepository.markAllRead(auth.userId());
+        unreadCounter.adjust(auth.userId(), -updated);
+        return new UpdatedCountDto(updated);
+    }
+
+    @GetMapping("unread-count")
+    @ApiOperation("当前用户的未读消息数，供页面轮询")
+    public UnreadCountDto getUnreadCount() {
+        if (!auth.isLoggedIn()) {
+            throw new UnauthorizedException();
         }
+        return new UnreadCountDto(unreadCounter.get(auth.userId()));
     }
 
 
@@ -135,12 +160,12 @@ public class MessageController {
         if (message.getSenderId() != -1) {
             var sender = userRepository.findById(message.getSenderId()).orElse(null);
             assert sender != null;
-            quser = Quser.convert(sender, mapper);
+            quser = Quser.convert(sender);
         } else { //若为系统通知则对应的用户信息为null
             quser = null;
         }
 
-        return QMessage.convert(message, quser, mapper);
+        return QMessage.convert(message, quser);
     }
 
 
@@ -151,6 +176,28 @@ public class MessageController {
             @RequestParam(required = false) String titleKeyword,
             @RequestParam(required = false) Boolean haveRead
     ) {
+        return queryMessages(senderId, receiverId, titleKeyword, haveRead, null, null).getItems();
+    }
+
+    @GetMapping("page")
+    @ApiOperation("getMessages的游标分页版本，按发送时间先后排序")
+    public PageResult<QMessage> getMessagePage(
+            @RequestParam(required = false) Long senderId,
+            @RequestParam(required = false) Long receiverId,
+            @RequestParam(required = false) String titleKeyword,
+            @RequestParam(required = false) Boolean haveRead,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return queryMessages(senderId, receiverId, titleKeyword, haveRead,
+                Cursor.decode(cursor), Cursor.normalizeLimit(limit));
+    }
+
+    /**
+     * @param limit 为null时不分页
+     */
+    private PageResult<QMessage> queryMessages(Long senderId, Long receiverId, String titleKeyword,
+                                               Boolean haveRead, Cursor cursor, Integer limit) {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
@@ -159,30 +206,33 @@ public class MessageController {
                         " where (:senderId is null or m.senderId = :senderId)" +
                         " and (:receiverId is null or m.receiverId = :receiverId)" +
                         " and (:titleKeyword is null or m.title like :titleExpr)" +
-                        " and (:haveRead is null or m.haveRead = :haveRead)")
+                        " and (:haveRead is null or m.haveRead = :haveRead)" +
+                        (cursor == null ? "" : " and m.id > :cursorId") +
+                        " order by m.id", Message.class)
                 .setParameter("senderId", senderId)
                 .setParameter("receiverId", receiverId)
                 .setParameter("titleKeyword", titleKeyword)
                 .setParameter("titleExpr", "%" + titleKeyword + "%")
                 .setParameter("haveRead", haveRead);
+        if (cursor != null) {
+            query.setParameter("cursorId", cursor.id);
+        }
+        if (limit != null) {
+            query.setMaxResults(limit + 1);
+        }
 
         var results = query.getResultList();
+        var nextCursor = Cursor.trimPage(results, limit, m -> Cursor.ofId(m.getId()));
+        //若为系统通知则对应的用户信息为null
+        var senders = profileResolver.resolveUsers(results, m -> m.getSenderId() == -1 ? null : m.getSenderId());
         var qMessages = new ArrayList<QMessage>();
-        for (var result : results) {
-            var message = (Message) result;
-            Quser quser;
-            if (message.getSenderId() != -1) {
-                var sender = userRepository.findById(message.getSenderId()).orElse(null);
-                assert sender != null;
-                quser = Quser.convert(sender, mapper);
-            } else { //若为系统通知则对应的用户信息为null
-                quser = null;
-            }
-            var qMessage = QMessage.convert(message, quser, mapper);
+        for (var message : results) {
+            var quser = senders.get(message.getSenderId());
+            var qMessage = QMessage.convert(message, quser);
 
             qMessages.add(qMessage);
         }
-        return qMessages;
+        return new PageResult<>(qMessages, nextCursor);
     }
 
 
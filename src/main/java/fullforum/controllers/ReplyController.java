@@ -5,6 +5,7 @@ import fullforum.data.models.*;
 import fullforum.data.repos.*;
 import fullforum.dto.in.CreateReplyModel;
 import fullforum.dto.out.IdDto;
+import fullforum.dto.out.PageResult;
 import fullforum.dto.out.QReply;
 import fullforum.dto.out.Quser;
 import fullforum.dto.out.UserPermission;
@@ -12,9 +13,12 @@ import fullforum.errhand.BadRequestException;
 import fullforum.errhand.ForbidException;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
+import fullforum.services.Cursor;
 import fullforum.services.IAuth;
+import fullforum.services.NotificationService;
+import fullforum.services.ProfileResolver;
 import fullforum.services.Snowflake;
-import org.modelmapper.ModelMapper;
+import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -37,7 +41,7 @@ public class ReplyController {
     Snowflake snowflake;
 
     @Autowired
-    ModelMapper mapper;
+    ProfileResolver profileResolver;
 
     @Autowired
     EntityManager entityManager;
@@ -58,7 +62,7 @@ public class ReplyController {
     CommentRepository commentRepository;
 
     @Autowired
-    MessageRepository messageRepository;
+    NotificationService notificationService;
 
     @Autowired
     MembershipRepository membershipRepository;
@@ -76,16 +80,13 @@ public class ReplyController {
 
         var reply = new Reply(snowflake.nextId(), comment.getId(), auth.userId(), model.targetUserId, model.content);
         replyRepository.save(reply);
+        commentRepository.addReplyCount(comment.getId(), 1);
 
         if (reply.getUserId() != reply.getTargetUserId()) {//只有来自他人的回复才通知评论/回复作者
             var sender = userRepository.findById(auth.userId()).orElse(null);
             assert sender != null;
-            var message = new Message(snowflake.nextId(), auth.userId(), reply.getTargetUserId());
-            message.setTitle("评论回复通知");
-            message.setContent(sender.getUsername() + " 回复了你");
-            message.setLink("/readFile/" + comment.getDocumentId());
-
-            messageRepository.save(message);
+            notificationService.notify(auth.userId(), reply.getTargetUserId(), "评论回复通知",
+                    sender.getUsername() + " 回复了你", "/readFile/" + comment.getDocumentId());
         }
 
 
@@ -107,6 +108,7 @@ public class ReplyController {
         }
 
         replyRepository.deleteById(id);
+        commentRepository.addReplyCount(reply.getCommentId(), -1);
     }
 
     @GetMapping("{id}")
@@ -121,40 +123,57 @@ public class ReplyController {
 
         var user = userRepository.findById(reply.getUserId()).orElse(null);
         assert user != null;
-        var qUser = Quser.convert(user, mapper);
+        var qUser = Quser.convert(user);
 
-        var thumb = thumbRepository.findByUserIdAndTargetId(auth.userId(), reply.getId());
-        return QReply.convert(reply, qUser, mapper, thumb);
+        var thumb = thumbRepository.findByUserIdAndTargetIdAndType(auth.userId(), reply.getId(), TargetType.Reply);
+        return QReply.convert(reply, qUser, thumb);
     }
 
     @GetMapping()
     public List<QReply> getReplies(@RequestParam(required = false) Long commentId) {
+        return queryReplies(commentId, null, null).getItems();
+    }
+
+    @GetMapping("page")
+    @ApiOperation("getReplies的游标分页版本，按回复时间先后排序")
+    public PageResult<QReply> getReplyPage(
+            @RequestParam(required = false) Long commentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return queryReplies(commentId, Cursor.decode(cursor), Cursor.normalizeLimit(limit));
+    }
+
+    /**
+     * @param limit 为null时不分页
+     */
+    private PageResult<QReply> queryReplies(Long commentId, Cursor cursor, Integer limit) {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
         var query = entityManager.createQuery(
-                "select r, t from Reply r left join Thumb t " +
-                        "on (r.userId = t.userId and r.id = t.targetId) " +
-                        "where (:cid is null or r.commentId = :cid) ")
+                "select r from Reply r " +
+                        "where (:cid is null or r.commentId = :cid) " +
+                        (cursor == null ? "" : "and r.id > :cursorId ") +
+                        "order by r.id", Reply.class)
                 .setParameter("cid", commentId);
+        if (cursor != null) {
+            query.setParameter("cursorId", cursor.id);
+        }
+        if (limit != null) {
+            query.setMaxResults(limit + 1);
+        }
         var results = query.getResultList();
+        var nextCursor = Cursor.trimPage(results, limit, r -> Cursor.ofId(r.getId()));
+        var users = profileResolver.resolveUsers(results, Reply::getUserId);
+        // 只取当前用户的点赞，而不是回复作者自己的
+        var myThumbs = profileResolver.resolveThumbs(auth.userId(), TargetType.Reply, results, Reply::getId);
         var replies = new ArrayList<QReply>();
-        for (Object result : results) {
-            var objs = (Object[]) result;
-            var reply = (Reply) (objs)[0];
-            Thumb thumb;
-            if (objs[1] != null) {
-                thumb = (Thumb) objs[1];
-            } else {
-                thumb = null;
-            }
-            var user = userRepository.findById(reply.getUserId()).orElse(null);
-            assert user != null;
-            var qUser = Quser.convert(user, mapper);
-
-            replies.add(QReply.convert(reply, qUser, mapper, thumb));
+        for (var reply : results) {
+            var qUser = users.get(reply.getUserId());
+            replies.add(QReply.convert(reply, qUser, myThumbs.get(reply.getId())));
         }
 
-        return replies;
+        return new PageResult<>(replies, nextCursor);
     }
 }
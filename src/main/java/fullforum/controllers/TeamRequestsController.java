@@ -1,7 +1,6 @@
 package fullforum.controllers;
 
 import fullforum.data.models.Membership;
-import fullforum.data.models.Message;
 import fullforum.data.models.Team;
 import fullforum.data.models.TeamRequest;
 import fullforum.data.repos.*;
@@ -13,10 +12,12 @@ import fullforum.dto.out.QTeam;
 import fullforum.dto.out.QTeamRequest;
 import fullforum.dto.out.Quser;
 import fullforum.errhand.*;
+import fullforum.services.DocumentPermissionService;
 import fullforum.services.IAuth;
+import fullforum.services.NotificationService;
+import fullforum.services.ProfileResolver;
 import fullforum.services.Snowflake;
 import org.hibernate.cfg.NotYetImplementedException;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -39,7 +40,7 @@ public class TeamRequestsController {
     IAuth auth;
 
     @Autowired
-    ModelMapper mapper;
+    ProfileResolver profileResolver;
 
     @Autowired
     EntityManager entityManager;
@@ -48,7 +49,7 @@ public class TeamRequestsController {
     UserRepository userRepository;
 
     @Autowired
-    MessageRepository messageRepository;
+    NotificationService notificationService;
 
     @Autowired
     MembershipRepository membershipRepository;
@@ -59,6 +60,9 @@ public class TeamRequestsController {
     @Autowired
     TeamRepository teamRepository;
 
+    @Autowired
+    DocumentPermissionService permissionService;
+
 
     @PostMapping
     public IdDto createTeamRequest(@RequestBody @Valid CreateTeamRequestModel model) {
@@ -87,11 +91,8 @@ public class TeamRequestsController {
         teamRequestRepository.save(teamRequest);
 
         // 给组长发送消息通知
-        var message = new Message(snowflake.nextId(), -1L, team.getLeaderId());
-        message.setTitle("有新的团队申请");
-        message.setContent("你的小组 " + team.getName() + " 有新的成员申请");
-        message.setLink("/team/" + team.getId());
-        messageRepository.save(message);
+        notificationService.notify(NotificationService.SYSTEM_SENDER, team.getLeaderId(), "有新的团队申请",
+                "你的小组 " + team.getName() + " 有新的成员申请", "/team/" + team.getId());
 
         return new IdDto(teamRequest.getId());
     }
@@ -122,11 +123,10 @@ public class TeamRequestsController {
         request.handle(model.agree);
         if (model.agree) {
             var membership = new Membership(snowflake.nextId(), request.getTeamId(), request.getUserId());
-            var message = new Message(snowflake.nextId(), -1L, membership.getUserId());
-            message.setTitle("加入团队通知");
-            message.setContent("你已成功加入团队 " + team.getName());
             membershipRepository.save(membership);
-            messageRepository.save(message);
+            notificationService.notify(NotificationService.SYSTEM_SENDER, membership.getUserId(), "加入团队通知",
+                    "你已成功加入团队 " + team.getName(), null);
+            permissionService.invalidateUser(membership.getUserId());
         }
         teamRequestRepository.save(request);
     }
@@ -138,11 +138,11 @@ public class TeamRequestsController {
             throw new NotFoundException("请求不存在");
         }
 
-        var qUser = Quser.convert(userRepository.findById(teamRequest.getUserId()).orElse(null), mapper);
-        var qTeam = QTeam.convert(teamRepository.findById(teamRequest.getTeamId()).orElse(null), mapper);
+        var qUser = Quser.convert(userRepository.findById(teamRequest.getUserId()).orElse(null));
+        var qTeam = QTeam.convert(teamRepository.findById(teamRequest.getTeamId()).orElse(null));
 
 
-        return QTeamRequest.convert(teamRequest, mapper, qTeam, qUser);
+        return QTeamRequest.convert(teamRequest, qTeam, qUser);
     }
 
     @GetMapping
@@ -159,18 +159,19 @@ public class TeamRequestsController {
                         " where (:userId is null or tr.userId = :userId)" +
                         " and (:teamId is null or tr.teamId = :teamId)" +
                         " and (:isHandled is null or tr.isHandled = :isHandled)" +
-                        " and (:isAgree is null or tr.isAgree = :isAgree)")
+                        " and (:isAgree is null or tr.isAgree = :isAgree)", TeamRequest.class)
                 .setParameter("userId", userId)
                 .setParameter("teamId", teamId)
                 .setParameter("isHandled", isHandled)
                 .setParameter("isAgree", isAgree);
         var results = query.getResultList();
-        for (var result : results) {
-            var teamRequest = (TeamRequest) result;
-            var qUser = Quser.convert(userRepository.findById(teamRequest.getUserId()).orElse(null), mapper);
-            var qTeam = QTeam.convert(teamRepository.findById(teamRequest.getTeamId()).orElse(null), mapper);
+        var users = profileResolver.resolveUsers(results, TeamRequest::getUserId);
+        var teams = profileResolver.resolveTeams(results, TeamRequest::getTeamId);
+        for (var teamRequest : results) {
+            var qUser = users.get(teamRequest.getUserId());
+            var qTeam = teams.get(teamRequest.getTeamId());
 
-            qRequests.add(QTeamRequest.convert(teamRequest, mapper, qTeam, qUser));
+            qRequests.add(QTeamRequest.convert(teamRequest, qTeam, qUser));
         }
         return qRequests;
     }
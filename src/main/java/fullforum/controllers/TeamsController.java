@@ -1,20 +1,22 @@
 package fullforum.controllers;
 
-import fullforum.data.models.Document;
 import fullforum.data.models.Membership;
-import fullforum.data.models.Message;
 import fullforum.data.models.Team;
 import fullforum.data.repos.*;
 import fullforum.dto.in.CreateMessageModel;
 import fullforum.dto.in.CreateTeamModel;
 import fullforum.dto.in.PatchTeamModel;
 import fullforum.dto.out.IdDto;
+import fullforum.dto.out.PageResult;
 import fullforum.dto.out.QTeam;
 import fullforum.errhand.*;
+import fullforum.services.Cursor;
+import fullforum.services.DocumentPermissionService;
 import fullforum.services.IAuth;
+import fullforum.services.NotificationService;
 import fullforum.services.Snowflake;
+import io.swagger.annotations.ApiOperation;
 import org.hibernate.cfg.NotYetImplementedException;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -36,9 +38,6 @@ public class TeamsController {
     @Autowired
     Snowflake snowflake;
 
-    @Autowired
-    ModelMapper mapper;
-
     @Autowired
     EntityManager entityManager;
 
@@ -49,7 +48,7 @@ public class TeamsController {
     UserRepository userRepository;
 
     @Autowired
-    MessageRepository messageRepository;
+    NotificationService notificationService;
 
     @Autowired
     DocumentRepository documentRepository;
@@ -57,6 +56,12 @@ public class TeamsController {
     @Autowired
     MembershipRepository membershipRepository;
 
+    @Autowired
+    TeamRequestRepository teamRequestRepository;
+
+    @Autowired
+    DocumentPermissionService permissionService;
+
 
     @PostMapping
     public IdDto createTeam(@RequestBody @Valid CreateTeamModel model) {
@@ -75,10 +80,8 @@ public class TeamsController {
         var membership = new Membership(snowflake.nextId(), team.getId(), auth.userId());
         membershipRepository.save(membership);
 
-        var message = new Message(snowflake.nextId(), -1L, auth.userId());
-        message.setTitle("创建团队通知");
-        message.setContent("你已成功创建团队 " + team.getName());
-        messageRepository.save(message);
+        notificationService.notify(NotificationService.SYSTEM_SENDER, auth.userId(), "创建团队通知",
+                "你已成功创建团队 " + team.getName(), null);
 
         return new IdDto(team.getId());
     }
@@ -112,14 +115,8 @@ public class TeamsController {
         var sender = userRepository.findById(auth.userId()).orElse(null);
         assert sender != null;
 
-        var message = new Message(snowflake.nextId(), auth.userId(), receiverId);
-        message.setTitle("团队邀请通知");
-        message.setContent(sender.getUsername() + " 邀请你加入团队 " + team.getName());
-
-        // TODO: set link
-        message.setLink("/team/" + team.getId());
-
-        messageRepository.save(message);
+        notificationService.notify(auth.userId(), receiverId, "团队邀请通知",
+                sender.getUsername() + " 邀请你加入团队 " + team.getName(), "/team/" + team.getId());
     }
 
     @PatchMapping("{id}")
@@ -156,23 +153,18 @@ public class TeamsController {
         if (team.getLeaderId() != auth.userId()) {
             throw new ForbidException();
         }
-        var teamDocuments = documentRepository.findAllByTeamId(id);
+        // 团队文档变为个人文档
+        documentRepository.clearTeam(id);
 
-        for (Document teamDocument : teamDocuments) {
-            teamDocument.setTeamId(null);
-            documentRepository.save(teamDocument);
-        }
-
-        var memberships = membershipRepository.findAllByTeamId(id);
-        for (var membership : memberships) {
-            var message = new Message(snowflake.nextId(), -1L, membership.getUserId());
-            message.setTitle("团队解散通知");
-            message.setContent("你所在的团队 " + team.getName() + " 已解散");
-            messageRepository.save(message);
-        }
+        var memberIds = membershipRepository.findUserIdsByTeamId(id);
+        notificationService.notifyAll(NotificationService.SYSTEM_SENDER, memberIds, "团队解散通知",
+                "你所在的团队 " + team.getName() + " 已解散", null);
 
         membershipRepository.deleteAllByTeamId(id);
+        teamRequestRepository.deleteByTeamId(id);
         teamRepository.deleteById(id);
+        // 团队文档和成员关系都变了，涉及的缓存项太分散，直接全部清掉
+        permissionService.invalidateAll();
     }
 
     @GetMapping("{id}")
@@ -182,7 +174,7 @@ public class TeamsController {
         if (team == null) {
             return null;
         }
-        return QTeam.convert(team, mapper);
+        return QTeam.convert(team);
     }
 
     @GetMapping
@@ -190,19 +182,46 @@ public class TeamsController {
             @RequestParam(required = false) Long leaderId,
             @RequestParam(required = false) String teamNameKeyword
     ) {
+        return queryTeams(leaderId, teamNameKeyword, null, null).getItems();
+    }
+
+    @GetMapping("page")
+    @ApiOperation("getTeams的游标分页版本，按创建时间先后排序")
+    public PageResult<QTeam> getTeamPage(
+            @RequestParam(required = false) Long leaderId,
+            @RequestParam(required = false) String teamNameKeyword,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return queryTeams(leaderId, teamNameKeyword, Cursor.decode(cursor), Cursor.normalizeLimit(limit));
+    }
+
+    /**
+     * @param limit 为null时不分页
+     */
+    private PageResult<QTeam> queryTeams(Long leaderId, String teamNameKeyword, Cursor cursor, Integer limit) {
         var qTeams = new ArrayList<QTeam>();
         var query = entityManager.createQuery(
                 "select t from Team t" +
                         " where (:leaderId is null or t.leaderId = :leaderId)" +
-                        " and (:teamNameKeyword is null or t.name like :keywordExpr)")
+                        " and (:teamNameKeyword is null or t.name like :keywordExpr)" +
+                        (cursor == null ? "" : " and t.id > :cursorId") +
+                        " order by t.id", Team.class)
                 .setParameter("leaderId", leaderId)
                 .setParameter("teamNameKeyword", teamNameKeyword)
                 .setParameter("keywordExpr", "%" + teamNameKeyword + "%");
+        if (cursor != null) {
+            query.setParameter("cursorId", cursor.id);
+        }
+        if (limit != null) {
+            query.setMaxResults(limit + 1);
+        }
         var results = query.getResultList();
-        for (var result : results) {
-            qTeams.add(QTeam.convert((Team) result, mapper));
+        var nextCursor = Cursor.trimPage(results, limit, t -> Cursor.ofId(t.getId()));
+        for (var team : results) {
+            qTeams.add(QTeam.convert(team));
         }
-        return qTeams;
+        return new PageResult<>(qTeams, nextCursor);
     }
 
 
@@ -1,6 +1,5 @@
 package fullforum.controllers;
 
-import fullforum.data.models.Message;
 import fullforum.data.models.TargetType;
 import fullforum.data.models.Thumb;
 import fullforum.data.repos.*;
@@ -8,9 +7,12 @@ import fullforum.dto.in.CreatThumbUpModel;
 import fullforum.dto.out.IdDto;
 import fullforum.errhand.*;
 import fullforum.services.IAuth;
+import fullforum.services.NotificationService;
 import fullforum.services.Snowflake;
+import fullforum.services.ThumbCountAggregator;
 import org.hibernate.cfg.NotYetImplementedException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Controller;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
@@ -34,7 +36,7 @@ public class ThumbController {
     UserRepository userRepository;
 
     @Autowired
-    MessageRepository messageRepository;
+    NotificationService notificationService;
 
     @Autowired
     ThumbRepository thumbRepository;
@@ -45,6 +47,9 @@ public class ThumbController {
     @Autowired
     ReplyRepository replyRepository;
 
+    @Autowired
+    ThumbCountAggregator thumbCountAggregator;
+
 
     @PostMapping
     public IdDto giveThumbUp(@RequestBody @Valid CreatThumbUpModel model) {
@@ -54,12 +59,6 @@ public class ThumbController {
         var user = userRepository.findById(auth.userId()).orElse(null);
         assert user != null;
 
-        var existedThumb = thumbRepository
-                .findByUserIdAndTargetIdAndType(auth.userId(), model.targetId, model.targetType);
-        if (existedThumb != null) {
-            throw new BadRequestException(ErrorCode.UniqueViolation, "你已经点过赞了");
-        }
-
         Thumb thumb;
         if (model.targetType == TargetType.Reply) {
             var reply = replyRepository.findById(model.targetId).orElse(null);
@@ -67,14 +66,11 @@ public class ThumbController {
                 throw new NotFoundException("回复不存在");
             }
             thumb = new Thumb(snowflake.nextId(), auth.userId(), reply.getId(), TargetType.Reply);
-            thumbRepository.save(thumb);
-            reply.thumbUp();
-            replyRepository.save(reply);
+            insertThumb(thumb);
+            thumbCountAggregator.add(TargetType.Reply, reply.getId(), 1);
             if (thumb.getUserId() != reply.getUserId()) {
-                var message = new Message(snowflake.nextId(), auth.userId(), reply.getUserId());
-                message.setTitle("收到点赞通知");
-                message.setContent(user.getUsername() + " 赞了你的回复");
-                messageRepository.save(message);
+                notificationService.notify(auth.userId(), reply.getUserId(), "收到点赞通知",
+                        user.getUsername() + " 赞了你的回复", null);
             }
         } else {
             var comment = commentRepository.findById(model.targetId).orElse(null);
@@ -82,19 +78,27 @@ public class ThumbController {
                 throw new NotFoundException("评论不存在");
             }
             thumb = new Thumb(snowflake.nextId(), auth.userId(), comment.getId(), TargetType.Comment);
-            thumbRepository.save(thumb);
-            comment.thumbUp();
-            commentRepository.save(comment);
+            insertThumb(thumb);
+            thumbCountAggregator.add(TargetType.Comment, comment.getId(), 1);
             if (thumb.getUserId() != comment.getUserId()) {
-                var message = new Message(snowflake.nextId(), auth.userId(), comment.getUserId());
-                message.setTitle("收到点赞通知");
-                message.setContent(user.getUsername() + " 赞了你的评论");
-                messageRepository.save(message);
+                notificationService.notify(auth.userId(), comment.getUserId(), "收到点赞通知",
+                        user.getUsername() + " 赞了你的评论", null);
             }
         }
         return new IdDto(thumb.getId());
     }
 
+    /**
+     * 重复点赞由唯一约束拦截，不需要先查询
+     */
+    private void insertThumb(Thumb thumb) {
+        try {
+            thumbRepository.insert(thumb);
+        } catch (DataIntegrityViolationException e) {
+            throw new BadRequestException(ErrorCode.UniqueViolation, "你已经点过赞了");
+        }
+    }
+
     @DeleteMapping("{id}")
     public void deleteThumbUp(@PathVariable Long id) {
         if (!auth.isLoggedIn()) {
@@ -113,15 +117,13 @@ public class ThumbController {
             if (comment == null) {
                 throw new NotFoundException("评论不存在");
             }
-            comment.cancelThumbUp();
-            commentRepository.save(comment);
+            thumbCountAggregator.add(TargetType.Comment, comment.getId(), -1);
         } else {
             var reply = replyRepository.findById(thumb.getTargetId()).orElse(null);
             if (reply == null) {
                 throw new NotFoundException("回复不存在");
             }
-            reply.cancelThumbUp();
-            replyRepository.save(reply);
+            thumbCountAggregator.add(TargetType.Reply, reply.getId(), -1);
         }
         thumbRepository.deleteById(id);
     }
@@ -4,18 +4,21 @@ import fullforum.data.repos.UserRepository;
 import fullforum.dto.out.IdDto;
 import fullforum.dto.out.Quser;
 import fullforum.errhand.*;
+import fullforum.services.Auth;
 import fullforum.services.IAuth;
+import fullforum.services.PasswordHasher;
+import fullforum.services.SessionStore;
 import fullforum.services.Snowflake;
 import fullforum.dto.in.CreateUserModel;
 import fullforum.dto.in.PatchUserModel;
 import fullforum.data.models.User;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.servlet.http.HttpServletResponse;
 import javax.transaction.Transactional;
 import javax.validation.Valid;
 import java.util.List;
@@ -34,6 +37,11 @@ public class UsersController {
     @Autowired
     IAuth auth;
 
+    @Autowired
+    PasswordHasher passwordHasher;
+
+    @Autowired
+    SessionStore sessionStore;
 
     @PostMapping
     public IdDto createUser(@Valid @RequestBody CreateUserModel model) {
@@ -45,13 +53,15 @@ public class UsersController {
         var initialAvatarUrl = "https://timgsa.baidu.com/timg?image&quality=80&size=b9999_10000&sec=1597064723297&di=c4d1baacccfaa045cbec77dfe4b8eacd&imgtype=0&src=http%3A%2F%2Fwww.cxyclub.cn%2FUpload%2FImages%2F2012022009%2F8466A231F7D5FFB3.jpg";
 
         var user = new User(snowflake.nextId(), model.username, model.password, model.description, initialAvatarUrl);
+        user.changePassword(model.password, passwordHasher);
         userRepository.save(user);
 
         return new IdDto(user.getId());
     }
 
     @PatchMapping("{id}")
-    public void patchUser(@Valid @RequestBody PatchUserModel model, @PathVariable long id) {
+    public void patchUser(@Valid @RequestBody PatchUserModel model, @PathVariable long id,
+                          HttpServletResponse response) {
         if (!auth.isLoggedIn()) {
             throw new UnauthorizedException();
         }
@@ -64,7 +74,10 @@ public class UsersController {
         }
         // check ok
         if (model.password != null) {
-            user.setPassword(model.password);
+            user.changePassword(model.password, passwordHasher);
+            // 其他地方的登录全部失效，当前请求换发新的token
+            sessionStore.revokeAll(user.getId());
+            response.addCookie(Auth.tokenCookie(sessionStore.issue(user.getId())));
         }
         if (model.description != null) {
             user.setDescription(model.description);
@@ -95,9 +108,6 @@ public class UsersController {
         }
     }
 
-    @Autowired
-    ModelMapper modelMapper;
-
     @GetMapping("{id}")
     public Quser getUserById(@PathVariable long id) {
         var user = userRepository.findById(id).orElse(null);
@@ -105,7 +115,7 @@ public class UsersController {
             return null;
         }
 
-        return Quser.convert(user, modelMapper);
+        return Quser.convert(user);
     }
 
     @PersistenceContext
@@ -117,6 +127,6 @@ public class UsersController {
         if (user == null) {
             return null;
         }
-        return Quser.convert(user, modelMapper);
+        return Quser.convert(user);
     }
 }
\ No newline at end of file
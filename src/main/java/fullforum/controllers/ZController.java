@@ -1,9 +1,15 @@
 package fullforum.controllers;
 
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import fullforum.dto.out.AuthStats;
+import fullforum.dto.out.BlobStorageStats;
+import fullforum.dto.out.CacheStats;
+import fullforum.services.BlobContentService;
+import fullforum.services.DocumentPermissionService;
+import fullforum.services.ImageVariantService;
+import fullforum.services.SessionStore;
+import fullforum.services.UnreadMessageCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
 
 import javax.transaction.Transactional;
 import javax.validation.Valid;
@@ -13,6 +19,21 @@ import javax.validation.Valid;
 @RequestMapping("/internal")
 public class ZController {
 
+    @Autowired
+    DocumentPermissionService permissionService;
+
+    @Autowired
+    SessionStore sessionStore;
+
+    @Autowired
+    BlobContentService blobContentService;
+
+    @Autowired
+    ImageVariantService imageVariantService;
+
+    @Autowired
+    UnreadMessageCounter unreadMessageCounter;
+
     public static class LongModel {
         public long a;
     }
@@ -21,4 +42,38 @@ public class ZController {
     public long longTest(@Valid @RequestBody LongModel model) {
         return model.a;
     }
+
+    @GetMapping("permission-cache-stats")
+    public CacheStats permissionCacheStats() {
+        return permissionService.stats();
+    }
+
+    @GetMapping("auth-stats")
+    public AuthStats authStats() {
+        return sessionStore.stats();
+    }
+
+    @GetMapping("image-variant-cache-stats")
+    public CacheStats imageVariantCacheStats() {
+        return imageVariantService.stats();
+    }
+
+    @GetMapping("unread-counter-stats")
+    public CacheStats unreadCounterStats() {
+        return unreadMessageCounter.stats();
+    }
+
+    @GetMapping("blob-stats")
+    public BlobStorageStats blobStats() {
+        return blobContentService.stats();
+    }
+
+    /**
+     * 立即执行一次去重和引用数修正，平时由定时任务执行
+     */
+    @PostMapping("blob-dedup")
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public BlobStorageStats blobDedup() {
+        return blobContentService.reconcile();
+    }
 }
@@ -0,0 +1,62 @@
+package fullforum.data;
+
+import fullforum.services.ContentSniffer;
+import fullforum.services.FileBlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 启动时把旧版本blob2.data列中的文件内容搬到FileBlobStore
+ * 每次只读取一行的内容，搬完的行data置空，确认无误后可以手动删除该列
+ */
+@Component
+public class BlobDataMigration implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(BlobDataMigration.class);
+
+    // 旧版本上传时没有记录类型，原来一律按jpeg返回；无法识别类型时保持不变
+    static final String LEGACY_CONTENT_TYPE = "image/jpeg";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    FileBlobStore blobStore;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Boolean hasLegacyColumn = jdbcTemplate.execute(
+                (ConnectionCallback<Boolean>) connection -> DocumentBodyMigration.hasColumn(connection, "blob2", "data"));
+        if (hasLegacyColumn == null || !hasLegacyColumn) {
+            return;
+        }
+
+        var ids = jdbcTemplate.queryForList(
+                "select id from blob2 where data is not null and content_hash is null", Long.class);
+        for (var id : ids) {
+            var data = jdbcTemplate.queryForObject("select data from blob2 where id = ?", byte[].class, id);
+            FileBlobStore.StoredContent stored;
+            try {
+                stored = blobStore.save(new ByteArrayInputStream(data));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            var contentType = ContentSniffer.sniff(data, data.length);
+            // 单条update自动提交，中途失败时已搬完的行不会重复处理
+            jdbcTemplate.update("update blob2 set size = ?, content_type = ?, content_hash = ?, data = null where id = ?",
+                    stored.size, contentType == null ? LEGACY_CONTENT_TYPE : contentType, stored.contentHash, id);
+        }
+        if (!ids.isEmpty()) {
+            log.info("moved {} blobs into the file store", ids.size());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package fullforum.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时给旧版本没有reply_count的评论补上回复数
+ */
+@Component
+public class CommentReplyCountMigration implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(CommentReplyCountMigration.class);
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // 单条语句，补数据期间新增的回复也会被统计进去
+        var updated = jdbcTemplate.update("update comment set reply_count =" +
+                " (select count(*) from reply where reply.comment_id = comment.id) where reply_count is null");
+        if (updated > 0) {
+            log.info("filled reply count for {} comments", updated);
+        }
+    }
+}
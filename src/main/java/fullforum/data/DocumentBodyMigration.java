@@ -0,0 +1,65 @@
+package fullforum.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 启动时把旧版本document.data列中的正文搬到document_body表
+ * 搬完后旧列被置空，确认无误后可以手动删除该列
+ */
+@Component
+public class DocumentBodyMigration implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(DocumentBodyMigration.class);
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Boolean hasLegacyColumn = jdbcTemplate.execute(
+                (ConnectionCallback<Boolean>) connection -> hasColumn(connection, "document", "data"));
+        if (hasLegacyColumn == null || !hasLegacyColumn) {
+            return;
+        }
+
+        Integer moved = new TransactionTemplate(transactionManager).execute(status -> {
+            var count = jdbcTemplate.update(
+                    "insert into document_body (id, created_at, updated_at, data)" +
+                            " select id, created_at, updated_at, data from document where body_id is null");
+            jdbcTemplate.update("update document set body_id = id, data = null where body_id is null");
+            return count;
+        });
+        if (moved != null && moved > 0) {
+            log.info("moved {} document bodies into document_body", moved);
+        }
+    }
+
+    static boolean hasColumn(Connection connection, String table, String column) throws SQLException {
+        var metaData = connection.getMetaData();
+        // 不同数据库对未加引号的标识符大小写处理不同
+        for (var tableName : new String[]{table.toLowerCase(), table.toUpperCase()}) {
+            for (var columnName : new String[]{column.toLowerCase(), column.toUpperCase()}) {
+                try (var columns = metaData.getColumns(connection.getCatalog(), null, tableName, columnName)) {
+                    if (columns.next()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package fullforum.data;
+
+import fullforum.data.models.ELock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 旧版本获取锁时先查询再插入，并发时可能为同一文档插入多行ELock，导致唯一约束无法创建
+ * 启动时删除重复的行（保留最早的一条），再补上唯一约束
+ */
+@Component
+public class ELockDedupMigration implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(ELockDedupMigration.class);
+
+    private static final String DUPLICATES = "select l1.id from elock l1 join elock l2" +
+            " on l1.document_id = l2.document_id and l1.id > l2.id";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // mysql不允许在子查询中直接引用被删除的表，多包一层
+        Integer removed = new TransactionTemplate(transactionManager).execute(status ->
+                jdbcTemplate.update("delete from elock where id in (select id from (" + DUPLICATES + ") d)"));
+        if (removed == null || removed == 0) {
+            return;
+        }
+        // 有重复数据说明建表时唯一约束没有创建成功。多个节点同时启动或已经手工加过时跳过
+        if (!constraintExists()) {
+            try {
+                jdbcTemplate.execute("alter table elock add constraint " + ELock.UNIQUE_CONSTRAINT +
+                        " unique (document_id)");
+            } catch (DataAccessException e) {
+                log.warn("failed to add constraint {}, it may have been added concurrently",
+                        ELock.UNIQUE_CONSTRAINT, e);
+            }
+        }
+        log.info("removed {} duplicate edit locks", removed);
+    }
+
+    private boolean constraintExists() {
+        var count = jdbcTemplate.queryForObject("select count(*) from information_schema.table_constraints" +
+                " where lower(table_name) = 'elock' and lower(constraint_name) = ?", Integer.class,
+                ELock.UNIQUE_CONSTRAINT);
+        return count != null && count > 0;
+    }
+}
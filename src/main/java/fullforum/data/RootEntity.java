@@ -34,4 +34,11 @@ public abstract class RootEntity {
     public void updatedAtNow() {
         updatedAt = System.currentTimeMillis();
     }
+
+    /**
+     * 写入延迟落库的数据时使用，保留实际发生的时间
+     */
+    protected void setUpdatedAt(Long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
 }
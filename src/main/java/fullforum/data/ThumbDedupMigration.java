@@ -0,0 +1,75 @@
+package fullforum.data;
+
+import fullforum.data.models.TargetType;
+import fullforum.data.models.Thumb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 旧版本在并发点赞时可能插入重复的thumb，导致唯一约束无法创建
+ * 启动时删除重复的记录（保留最早的一条），按剩下的记录修正点赞数，再补上唯一约束
+ */
+@Component
+public class ThumbDedupMigration implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(ThumbDedupMigration.class);
+
+    private static final String DUPLICATES = "select t1.id from thumb t1 join thumb t2" +
+            " on t1.user_id = t2.user_id and t1.target_id = t2.target_id and t1.type = t2.type and t1.id > t2.id";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Integer removed = new TransactionTemplate(transactionManager).execute(status -> {
+            var targets = jdbcTemplate.queryForList("select distinct target_id, type from thumb where id in (" +
+                    DUPLICATES + ")");
+            if (targets.isEmpty()) {
+                return 0;
+            }
+            // mysql不允许在子查询中直接引用被删除的表，多包一层
+            var count = jdbcTemplate.update("delete from thumb where id in (select id from (" + DUPLICATES + ") d)");
+            for (var target : targets) {
+                var targetId = ((Number) target.get("target_id")).longValue();
+                var type = ((Number) target.get("type")).intValue();
+                var table = type == TargetType.Reply.ordinal() ? "reply" : "comment";
+                jdbcTemplate.update("update " + table + " set thumb_count =" +
+                        " (select count(*) from thumb where target_id = ? and type = ?) where id = ?",
+                        targetId, type, targetId);
+            }
+            return count;
+        });
+        if (removed == null || removed == 0) {
+            return;
+        }
+        // 有重复数据说明建表时唯一约束没有创建成功。多个节点同时启动或已经手工加过时跳过
+        if (!constraintExists()) {
+            try {
+                jdbcTemplate.execute("alter table thumb add constraint " + Thumb.UNIQUE_CONSTRAINT +
+                        " unique (user_id, target_id, type)");
+            } catch (DataAccessException e) {
+                log.warn("failed to add constraint {}, it may have been added concurrently",
+                        Thumb.UNIQUE_CONSTRAINT, e);
+            }
+        }
+        log.info("removed {} duplicate thumbs", removed);
+    }
+
+    private boolean constraintExists() {
+        var count = jdbcTemplate.queryForObject("select count(*) from information_schema.table_constraints" +
+                " where lower(table_name) = 'thumb' and lower(constraint_name) = ?", Integer.class,
+                Thumb.UNIQUE_CONSTRAINT);
+        return count != null && count > 0;
+    }
+}
@@ -1,29 +1,31 @@
 package fullforum.data.models;
 
 import fullforum.data.RootEntity;
+import lombok.Getter;
 
-import javax.persistence.Column;
 import javax.persistence.Entity;
-import javax.persistence.Id;
 
+/**
+ * 上传文件的元数据，内容保存在FileBlobStore中，按contentHash查找
+ */
 @Entity
 public class Blob2 extends RootEntity {
-    @Column(length = 1024 * 1024 * 20)// 20M
-    private byte[] data;
+    @Getter
+    private long size;
 
-    protected Blob2() {
-    }
+    @Getter
+    private String contentType;
 
-    public Blob2(long id, byte[] data) {
-        super(id);
-        setData(data);
-    }
+    @Getter
+    private String contentHash;
 
-    public byte[] getData() {
-        return data;
+    protected Blob2() {
     }
 
-    public void setData(byte[] data) {
-        this.data = data;
+    public Blob2(long id, long size, String contentType, String contentHash) {
+        super(id);
+        this.size = size;
+        this.contentType = contentType;
+        this.contentHash = contentHash;
     }
 }
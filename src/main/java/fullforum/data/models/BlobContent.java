@@ -0,0 +1,38 @@
+package fullforum.data.models;
+
+import fullforum.data.RootEntity;
+import lombok.Getter;
+
+import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * 按内容去重后实际保存的一份文件，refCount为引用它的Blob2的数量
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = "contentHash"))
+public class BlobContent extends RootEntity {
+    @Getter
+    private String contentHash;
+
+    @Getter
+    private long size;
+
+    @Getter
+    private long refCount;
+
+    protected BlobContent() {
+    }
+
+    public BlobContent(long id, String contentHash, long size) {
+        super(id);
+        this.contentHash = contentHash;
+        this.size = size;
+    }
+
+    public void setRefCount(long refCount) {
+        this.refCount = refCount;
+        updatedAtNow();
+    }
+}
@@ -6,8 +6,11 @@ import lombok.Setter;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 @Entity
+@Table(indexes = @Index(columnList = "documentId,id"))
 public class Comment extends RootEntity {
     @Getter
     private long documentId;
@@ -23,6 +26,12 @@ public class Comment extends RootEntity {
     @Setter
     private long thumbCount = 0;
 
+    /**
+     * 旧数据为null，启动时由CommentReplyCountMigration补上
+     */
+    @Getter
+    private Long replyCount = 0L;
+
     protected Comment() {
 
     }
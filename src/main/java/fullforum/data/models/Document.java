@@ -5,10 +5,10 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
-import javax.persistence.Column;
-import javax.persistence.Entity;
+import javax.persistence.*;
 
 @Entity
+@Table(indexes = @Index(columnList = "updatedAt,id"))
 public class Document extends RootEntity {
 
     @Getter
@@ -57,10 +57,12 @@ public class Document extends RootEntity {
     @Getter
     private Long lastModifierId;
 
-    @Getter
-    @Setter
-    @Column(columnDefinition = "text", length = 65535)
-    private String data;
+    /**
+     * 正文单独存放并延迟加载，列表、权限判断等不需要正文的地方不会读取它
+     */
+    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "body_id")
+    private DocumentBody body;
 
     @Getter
     private int modifyCount = 0;
@@ -81,7 +83,19 @@ public class Document extends RootEntity {
         this.creatorId = creatorId;
         this.title = title;
         this.description = description;
-        this.data = data;
+        this.body = new DocumentBody(id, data);
+    }
+
+    public String getData() {
+        return body == null ? null : body.getData();
+    }
+
+    public void setData(String data) {
+        if (body == null) {
+            body = new DocumentBody(getId(), data);
+        } else {
+            body.setData(data);
+        }
     }
 
     public void setModifyCountAndModifier(long modifierId) {
@@ -104,7 +118,6 @@ public class Document extends RootEntity {
                 ", teamCommentAccess=" + teamCommentAccess +
                 ", teamCanShare=" + teamCanShare +
                 ", lastModifierId=" + lastModifierId +
-                ", data='" + data + '\'' +
                 ", modifyCount=" + modifyCount +
                 '}';
     }
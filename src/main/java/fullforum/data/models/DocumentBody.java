@@ -0,0 +1,30 @@
+package fullforum.data.models;
+
+import fullforum.data.RootEntity;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+
+/**
+ * 文档正文，与Document分开存放，只有需要正文时才加载
+ * id与所属文档的id相同
+ */
+@Entity
+public class DocumentBody extends RootEntity {
+
+    @Getter
+    @Setter
+    @Column(columnDefinition = "text", length = 65535)
+    private String data;
+
+    protected DocumentBody() {
+        // Required by jpa
+    }
+
+    public DocumentBody(long documentId, String data) {
+        super(documentId);
+        this.data = data;
+    }
+}
@@ -4,9 +4,21 @@ import fullforum.data.RootEntity;
 import lombok.Getter;
 
 import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
+/**
+ * 每个文档最多一行，在创建文档时一并创建
+ */
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = ELock.UNIQUE_CONSTRAINT, columnNames = "documentId"))
 public class ELock extends RootEntity {
+    public static final String UNIQUE_CONSTRAINT = "uk_elock_document";
+
+    /**
+     * 锁的超时时间（毫秒），编辑器需要在此之前续期
+     */
+    public static final int TIME_OUT = 3000;
 
     @Getter
     private long documentId;
@@ -18,7 +30,7 @@ public class ELock extends RootEntity {
     private long lastAcquiredAt;
 
     @Getter
-    private final int LOCK_TIME_OUT = 3000;
+    private final int LOCK_TIME_OUT = TIME_OUT;
 
     protected ELock() {
     }
@@ -6,8 +6,11 @@ import lombok.Getter;
 import lombok.Setter;
 
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 @Entity
+@Table(indexes = @Index(columnList = "receiverId,id"))
 public class Message extends RootEntity {
     @Getter
     @Setter
@@ -0,0 +1,60 @@
+package fullforum.data.models;
+
+import fullforum.data.RootEntity;
+import lombok.Getter;
+
+import javax.persistence.Entity;
+import javax.persistence.Lob;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 待发送的通知，与产生通知的业务操作在同一个事务中写入，由NotificationService在后台展开成Message
+ * 一条记录对应一个事件，接收者可以有很多个（如团队解散时的所有成员）
+ */
+@Entity
+public class NotificationOutbox extends RootEntity {
+    @Getter
+    private long senderId;//若为-1则为系统通知
+
+    /**
+     * 逗号分隔的接收者id
+     */
+    @Lob
+    private String receiverIds;
+
+    @Getter
+    private String title;
+
+    @Getter
+    private String content;
+
+    @Getter
+    private String link;
+
+    protected NotificationOutbox() {
+    }
+
+    public NotificationOutbox(long id, long senderId, Collection<Long> receiverIds,
+                              String title, String content, String link) {
+        super(id);
+        this.senderId = senderId;
+        this.receiverIds = receiverIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        this.title = title;
+        this.content = content;
+        this.link = link;
+    }
+
+    public List<Long> getReceiverIds() {
+        var result = new ArrayList<Long>();
+        if (receiverIds == null || receiverIds.isEmpty()) {
+            return result;
+        }
+        for (var id : receiverIds.split(",")) {
+            result.add(Long.parseLong(id));
+        }
+        return result;
+    }
+}
@@ -5,8 +5,11 @@ import lombok.Getter;
 import lombok.Setter;
 
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 @Entity
+@Table(indexes = @Index(columnList = "commentId,id"))
 public class Reply extends RootEntity {
     @Getter
     private long commentId;
@@ -0,0 +1,40 @@
+package fullforum.data.models;
+
+import fullforum.data.RootEntity;
+import lombok.Getter;
+
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * 登录会话，只保存token的SHA-256摘要，数据库泄露时无法直接冒用
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = "tokenHash"),
+        indexes = @Index(columnList = "userId"))
+public class SessionToken extends RootEntity {
+    @Getter
+    private String tokenHash;
+
+    @Getter
+    private long userId;
+
+    @Getter
+    private long expiresAt;
+
+    protected SessionToken() {
+    }
+
+    public SessionToken(long id, String tokenHash, long userId, long expiresAt) {
+        super(id);
+        this.tokenHash = tokenHash;
+        this.userId = userId;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+}
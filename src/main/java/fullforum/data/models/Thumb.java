@@ -4,10 +4,18 @@ import fullforum.data.RootEntity;
 import lombok.Getter;
 
 import javax.persistence.Entity;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
-
+/**
+ * 同一用户对同一对象只能点赞一次，由唯一约束保证
+ */
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = Thumb.UNIQUE_CONSTRAINT,
+        columnNames = {"userId", "targetId", "type"}))
 public class Thumb extends RootEntity {
+    public static final String UNIQUE_CONSTRAINT = "uk_thumb_user_target_type";
+
     @Getter
     private long userId;
 
@@ -1,6 +1,7 @@
 package fullforum.data.models;
 
 import fullforum.data.RootEntity;
+import fullforum.services.PasswordHasher;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -42,18 +43,41 @@ public class User extends RootEntity {
         this.username = username;
     }
 
+    /**
+     * 直接保存明文，只用于旧数据和测试；新密码应使用changePassword
+     */
     public void setPassword(String password) {
+        checkPasswordLength(password);
+        this.password = password;
+    }
+
+    public void changePassword(String password, PasswordHasher hasher) {
+        checkPasswordLength(password);
+        this.password = hasher.hash(password);
+    }
+
+    public boolean checkPassword(String passwordToCheck, PasswordHasher hasher) {
+        return hasher.verify(passwordToCheck, password);
+    }
+
+    /**
+     * 登录成功后调用，把明文或旧参数的哈希换成当前参数的哈希，返回是否有修改
+     */
+    public boolean upgradePassword(String verifiedPassword, PasswordHasher hasher) {
+        if (!hasher.needsRehash(password)) {
+            return false;
+        }
+        this.password = hasher.hash(verifiedPassword);
+        return true;
+    }
+
+    private static void checkPasswordLength(String password) {
         if (password == null) {
             throw new NullPointerException();
         }
         if (!(password.length() >= 6 && password.length() <= 32)) {
             throw new IllegalArgumentException();
         }
-        this.password = password;
-    }
-
-    public boolean checkPassword(String passwordToCheck) {
-        return password.equals(passwordToCheck);
     }
 
     public void setDescription(String description) {
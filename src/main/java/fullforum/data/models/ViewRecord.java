@@ -5,8 +5,11 @@ import lombok.Getter;
 import lombok.Setter;
 
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 @Entity
+@Table(indexes = @Index(columnList = "userId,documentId"))
 public class ViewRecord extends RootEntity {
     @Getter
     private long userId;
@@ -23,4 +26,18 @@ public class ViewRecord extends RootEntity {
         this.userId = userId;
         this.documentId = documentId;
     }
+
+    public ViewRecord(long id, long userId, long documentId, long viewedAt) {
+        this(id, userId, documentId);
+        setUpdatedAt(viewedAt);
+    }
+
+    /**
+     * 浏览时间只会向后移动
+     */
+    public void viewedAt(long viewedAt) {
+        if (getUpdatedAt() == null || getUpdatedAt() < viewedAt) {
+            setUpdatedAt(viewedAt);
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package fullforum.data.repos;
+
+import fullforum.data.models.BlobContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface BlobContentRepository extends JpaRepository<BlobContent, Long> {
+    BlobContent findByContentHash(String contentHash);
+
+    List<BlobContent> findByContentHashIn(Collection<String> contentHashes);
+
+    @Query("select c from BlobContent c where c.refCount = 0 and c.updatedAt < :before")
+    List<BlobContent> findUnreferenced(@Param("before") long before);
+
+    /**
+     * 已经没有Blob2引用的内容，引用数归零，等待清理
+     */
+    @Modifying
+    @Query("update BlobContent c set c.refCount = 0, c.updatedAt = :now where c.refCount <> 0" +
+            " and not exists (select b.id from Blob2 b where b.contentHash = c.contentHash)")
+    int resetOrphans(@Param("now") long now);
+
+    @Modifying
+    @Query("delete from BlobContent c where c.id = :id and c.refCount = 0")
+    int deleteIfUnreferenced(@Param("id") long id);
+
+    /**
+     * 只有一行：文件数, 总字节数
+     */
+    @Query("select count(c), coalesce(sum(c.size), 0) from BlobContent c where c.refCount > 0")
+    List<Object[]> storedTotals();
+}
@@ -2,6 +2,22 @@ package fullforum.data.repos;
 
 import fullforum.data.models.Blob2;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
 
 public interface BlobRepository extends JpaRepository<Blob2, Long> {
+
+    /**
+     * 每行是 contentHash, size, 引用数
+     */
+    @Query("select b.contentHash, max(b.size), count(b) from Blob2 b" +
+            " where b.contentHash is not null group by b.contentHash")
+    List<Object[]> countByContentHash();
+
+    /**
+     * 只有一行：Blob2的行数, 总字节数
+     */
+    @Query("select count(b), coalesce(sum(b.size), 0) from Blob2 b")
+    List<Object[]> logicalTotals();
 }
@@ -2,6 +2,9 @@ package fullforum.data.repos;
 
 import fullforum.data.models.Comment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -9,4 +12,18 @@ public interface CommentRepository extends JpaRepository<Comment, Long> {
 
     List<Comment>findAllByDocumentId(Long documentId);
 
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Comment c set c.thumbCount = c.thumbCount + :delta where c.id = :id")
+    int addThumbCount(@Param("id") long id, @Param("delta") long delta);
+
+    /**
+     * replyCount为null（尚未补数据）时保持null
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Comment c set c.replyCount = c.replyCount + :delta where c.id = :id")
+    int addReplyCount(@Param("id") long id, @Param("delta") long delta);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Comment c where c.documentId = :documentId")
+    int deleteByDocumentId(@Param("documentId") long documentId);
 }
@@ -0,0 +1,14 @@
+package fullforum.data.repos;
+
+import fullforum.data.models.DocumentBody;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface DocumentBodyRepository extends JpaRepository<DocumentBody, Long> {
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update DocumentBody b set b.data = :data, b.updatedAt = :now where b.id = :documentId")
+    int updateData(@Param("documentId") long documentId, @Param("data") String data, @Param("now") long now);
+}
@@ -2,6 +2,9 @@ package fullforum.data.repos;
 
 import fullforum.data.models.Document;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -13,4 +16,29 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
 
     List<Document> findAllByIsAbandoned(Boolean isAbandoned);
 
+    /**
+     * 仅当modifyCount仍等于baseModifyCount时把modifyCount加一，返回受影响的行数
+     * 成功后这一行被当前事务锁住，随后再写入正文
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Document d set d.modifyCount = d.modifyCount + 1," +
+            " d.lastModifierId = :modifierId, d.updatedAt = :now" +
+            " where d.id = :id and d.modifyCount = :baseModifyCount")
+    int bumpModifyCountIfUnchanged(@Param("id") long id, @Param("modifierId") long modifierId,
+                                   @Param("now") long now, @Param("baseModifyCount") int baseModifyCount);
+
+    /**
+     * 与bumpModifyCountIfUnchanged相同，但不清空持久化上下文，调用方之后继续修改已加载的文档。
+     * 需要在修改文档之前调用，否则自动flush会先把读取到的旧modifyCount写回去
+     */
+    @Modifying
+    @Query("update Document d set d.modifyCount = d.modifyCount + 1," +
+            " d.lastModifierId = :modifierId, d.updatedAt = :now" +
+            " where d.id = :id and d.modifyCount = :baseModifyCount")
+    int claimModifyCount(@Param("id") long id, @Param("modifierId") long modifierId,
+                         @Param("now") long now, @Param("baseModifyCount") int baseModifyCount);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Document d set d.teamId = null where d.teamId = :teamId")
+    int clearTeam(@Param("teamId") long teamId);
 }
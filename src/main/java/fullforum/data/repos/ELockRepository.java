@@ -2,7 +2,38 @@ package fullforum.data.repos;
 
 import fullforum.data.models.ELock;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface ELockRepository extends JpaRepository<ELock, Long> {
     public ELock findELockByDocumentId(Long documentId);
+
+    /**
+     * 条件更新：锁空闲、已超时或本来就属于userId时才能获得，返回受影响的行数
+     * 之后通常紧接着读取这一行，所以清空持久化上下文避免读到旧值
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ELock l set l.lastOwnerId = :userId, l.lastAcquiredAt = :now" +
+            " where l.documentId = :documentId" +
+            " and (l.lastOwnerId = :userId or l.lastAcquiredAt < :expiredBefore)")
+    int tryAcquire(@Param("documentId") long documentId, @Param("userId") long userId,
+                   @Param("now") long now, @Param("expiredBefore") long expiredBefore);
+
+    /**
+     * 无条件记录新的持有者，返回受影响的行数（0说明还没有这一行）
+     */
+    @Modifying
+    @Query("update ELock l set l.lastOwnerId = :userId, l.lastAcquiredAt = :now where l.documentId = :documentId")
+    int assignOwner(@Param("documentId") long documentId, @Param("userId") long userId, @Param("now") long now);
+
+    @Modifying
+    @Query("update ELock l set l.lastAcquiredAt = 0" +
+            " where l.documentId = :documentId and l.lastOwnerId = :userId and l.lastAcquiredAt >= :expiredBefore")
+    int release(@Param("documentId") long documentId, @Param("userId") long userId,
+                @Param("expiredBefore") long expiredBefore);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from ELock l where l.documentId = :documentId")
+    int deleteByDocumentId(@Param("documentId") long documentId);
 }
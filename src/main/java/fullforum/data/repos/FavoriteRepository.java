@@ -2,9 +2,15 @@ package fullforum.data.repos;
 
 import fullforum.data.models.Favorite;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface FavoriteRepository extends JpaRepository<Favorite, Long> {
 
     Favorite findByUserIdAndDocumentId(Long userId, Long documentId);
 
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Favorite f where f.documentId = :documentId")
+    int deleteByDocumentId(@Param("documentId") long documentId);
 }
@@ -2,6 +2,9 @@ package fullforum.data.repos;
 
 import fullforum.data.models.Membership;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -9,9 +12,20 @@ public interface MembershipRepository extends JpaRepository<Membership, Long> {
 
     List<Membership>findAllByTeamId(Long teamId);
 
-    void deleteAllByTeamId(Long teamId);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Membership m where m.teamId = :teamId")
+    int deleteAllByTeamId(@Param("teamId") Long teamId);
+
+    @Query("select m.userId from Membership m where m.teamId = :teamId")
+    List<Long> findUserIdsByTeamId(@Param("teamId") Long teamId);
 
     Membership findByUserIdAndTeamId(Long userId,Long teamId);
 
+    /**
+     * 用户所在的全部团队id，批量计算文档权限时使用
+     */
+    @Query("select m.teamId from Membership m where m.userId = :userId")
+    List<Long> findTeamIdsByUserId(@Param("userId") Long userId);
+
 
 }
@@ -2,11 +2,33 @@ package fullforum.data.repos;
 
 import fullforum.data.models.Message;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
     List<Message> findAllByReceiverIdAndHaveRead(Long receiverId, Boolean haveRead);
 
     List<Message> findAllByReceiverId(Long receiverId);
+
+    long countByReceiverIdAndHaveRead(Long receiverId, Boolean haveRead);
+
+    /**
+     * 返回[存在的消息数, 其中属于receiverId的消息数]
+     */
+    @Query("select count(m.id), coalesce(sum(case when m.receiverId = :receiverId then 1 else 0 end), 0)" +
+            " from Message m where m.id in :ids")
+    List<Object[]> countOwned(@Param("ids") Collection<Long> ids, @Param("receiverId") long receiverId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Message m set m.haveRead = true" +
+            " where m.id in :ids and m.receiverId = :receiverId and m.haveRead = false")
+    int markRead(@Param("ids") Collection<Long> ids, @Param("receiverId") long receiverId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Message m set m.haveRead = true where m.receiverId = :receiverId and m.haveRead = false")
+    int markAllRead(@Param("receiverId") long receiverId);
 }
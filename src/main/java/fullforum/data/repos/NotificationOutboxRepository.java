@@ -0,0 +1,20 @@
+package fullforum.data.repos;
+
+import fullforum.data.models.NotificationOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, Long> {
+    List<NotificationOutbox> findTop100ByOrderByIdAsc();
+
+    /**
+     * 返回0说明已经被其他节点发送
+     */
+    @Modifying
+    @Query("delete from NotificationOutbox o where o.id = :id")
+    int claim(@Param("id") long id);
+}
@@ -2,8 +2,20 @@ package fullforum.data.repos;
 
 import fullforum.data.models.Reply;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface ReplyRepository extends JpaRepository<Reply, Long> {
-    public void deleteAllByCommentId(long commentId);
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Reply r where r.commentId = :commentId")
+    int deleteAllByCommentId(@Param("commentId") long commentId);
 
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Reply r where r.commentId in (select c.id from Comment c where c.documentId = :documentId)")
+    int deleteByDocumentId(@Param("documentId") long documentId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Reply r set r.thumbCount = r.thumbCount + :delta where r.id = :id")
+    int addThumbCount(@Param("id") long id, @Param("delta") int delta);
 }
@@ -0,0 +1,23 @@
+package fullforum.data.repos;
+
+import fullforum.data.models.SessionToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface SessionTokenRepository extends JpaRepository<SessionToken, Long> {
+    SessionToken findByTokenHash(String tokenHash);
+
+    @Modifying
+    @Query("delete from SessionToken s where s.tokenHash = :tokenHash")
+    int deleteByTokenHash(@Param("tokenHash") String tokenHash);
+
+    @Modifying
+    @Query("delete from SessionToken s where s.userId = :userId")
+    int deleteByUserId(@Param("userId") long userId);
+
+    @Modifying
+    @Query("delete from SessionToken s where s.expiresAt <= :now")
+    int deleteExpired(@Param("now") long now);
+}
@@ -2,7 +2,14 @@ package fullforum.data.repos;
 
 import fullforum.data.models.TeamRequest;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface TeamRequestRepository extends JpaRepository<TeamRequest, Long> {
     TeamRequest findByUserIdAndTeamIdAndIsHandled(Long userId, Long teamId, Boolean handled);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from TeamRequest r where r.teamId = :teamId")
+    int deleteByTeamId(@Param("teamId") long teamId);
 }
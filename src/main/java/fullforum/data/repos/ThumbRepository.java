@@ -3,9 +3,48 @@ package fullforum.data.repos;
 import fullforum.data.models.TargetType;
 import fullforum.data.models.Thumb;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface ThumbRepository extends JpaRepository<Thumb, Long> {
     Thumb findByUserIdAndTargetId(long userId, long targetId);
 
     Thumb findByUserIdAndTargetIdAndType(long userId, long targetId, TargetType type);
+
+    List<Thumb> findAllByUserIdAndTypeAndTargetIdIn(long userId, TargetType type, Collection<Long> targetIds);
+
+    /**
+     * 直接插入，不先按id查询；已经点过赞时抛出DataIntegrityViolationException
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = "insert into thumb (id, created_at, updated_at, user_id, target_id, type)" +
+            " values (:#{#thumb.id}, :#{#thumb.createdAt}, :#{#thumb.updatedAt}," +
+            " :#{#thumb.userId}, :#{#thumb.targetId}, :#{#thumb.type.ordinal()})", nativeQuery = true)
+    int insert(@Param("thumb") Thumb thumb);
+
+    /**
+     * 删除评论及其回复上的点赞，需要在删除回复之前执行
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Thumb t where" +
+            " (t.type = fullforum.data.models.TargetType.Comment and t.targetId = :commentId)" +
+            " or (t.type = fullforum.data.models.TargetType.Reply" +
+            " and t.targetId in (select r.id from Reply r where r.commentId = :commentId))")
+    int deleteByCommentId(@Param("commentId") long commentId);
+
+    /**
+     * 删除文档下所有评论和回复上的点赞，需要在删除评论和回复之前执行
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Thumb t where" +
+            " (t.type = fullforum.data.models.TargetType.Comment" +
+            " and t.targetId in (select c.id from Comment c where c.documentId = :documentId))" +
+            " or (t.type = fullforum.data.models.TargetType.Reply" +
+            " and t.targetId in (select r.id from Reply r, Comment c" +
+            " where r.commentId = c.id and c.documentId = :documentId))")
+    int deleteByDocumentId(@Param("documentId") long documentId);
 }
@@ -2,8 +2,19 @@ package fullforum.data.repos;
 
 import fullforum.data.models.ViewRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface ViewRecordRepository extends JpaRepository<ViewRecord, Long> {
     public ViewRecord findByDocumentIdAndUserId(Long documentId, Long userId);
 
+    List<ViewRecord> findByUserIdInAndDocumentIdIn(Collection<Long> userIds, Collection<Long> documentIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from ViewRecord v where v.documentId = :documentId")
+    int deleteByDocumentId(@Param("documentId") long documentId);
 }
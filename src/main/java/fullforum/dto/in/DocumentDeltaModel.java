@@ -0,0 +1,46 @@
+package fullforum.dto.in;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * 增量保存文档内容
+ * ops按顺序作用在文档当前内容上，后一个操作的位置以前一个操作之后的内容为准
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DocumentDeltaModel {
+    /**
+     * 客户端所基于的版本，必须等于文档当前的modifyCount
+     */
+    @NotNull
+    public Integer baseModifyCount;
+
+    @NotNull
+    @Valid
+    public List<SpliceOp> ops;
+
+    /**
+     * 从index开始删除deleteCount个字符，再在index处插入insert
+     * 位置以UTF-16代码单元计，与JavaScript字符串的下标一致
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class SpliceOp {
+        @Min(0)
+        public int index;
+
+        @Min(0)
+        public int deleteCount;
+
+        public String insert;
+    }
+}
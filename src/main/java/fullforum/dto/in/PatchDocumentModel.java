@@ -27,4 +27,9 @@ public class PatchDocumentModel {
     public Access teamDocumentAccess;
     public Access teamCommentAccess;
     public Boolean teamCanShare;
+
+    /**
+     * 客户端读取到的版本，不是最新版本时返回409；为空时以服务端读取到的版本为准
+     */
+    public Integer baseModifyCount;
 }
@@ -0,0 +1,18 @@
+package fullforum.dto.out;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 各种身份验证方式的请求数，legacyRequests为仍在使用用户名密码cookie的请求
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AuthStats {
+    private long tokenRequests;
+    private long legacyRequests;
+    private long rejectedRequests;
+    private int cachedSessions;
+}
@@ -1,6 +1,6 @@
 package fullforum.dto.out;
 
-import lombok.Data;
+import fullforum.data.RootEntity;
 
 public abstract class BaseQDto {
     private Long id;
@@ -30,4 +30,13 @@ public abstract class BaseQDto {
     public void setUpdatedAt(Long updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    /**
+     * 复制所有实体共有的字段，供各个convert使用
+     */
+    protected void copyRootFields(RootEntity entity) {
+        id = entity.getId();
+        createdAt = entity.getCreatedAt();
+        updatedAt = entity.getUpdatedAt();
+    }
 }
@@ -1,12 +1,37 @@
 package fullforum.dto.out;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
-import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * error为失败的文件数，data为上传成功的文件url
+ * files与上传的文件一一对应，失败的文件url为null并带有原因
+ */
 @Data
+@AllArgsConstructor
+@NoArgsConstructor
 public class BatchUploadResult {
     private int error = 0;
     private List<String> data;
+    private List<FileResult> files;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class FileResult {
+        private String name;
+        private String url;
+        private String error;
+
+        public static FileResult success(String name, String url) {
+            return new FileResult(name, url, null);
+        }
+
+        public static FileResult failure(String name, String error) {
+            return new FileResult(name, null, error);
+        }
+    }
 }
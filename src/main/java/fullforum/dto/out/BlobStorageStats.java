@@ -0,0 +1,19 @@
+package fullforum.dto.out;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * blobs为上传记录数，contents为去重后实际保存的文件数，savedBytes为去重节省的空间
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BlobStorageStats {
+    private long blobs;
+    private long logicalBytes;
+    private long contents;
+    private long storedBytes;
+    private long savedBytes;
+}
@@ -0,0 +1,14 @@
+package fullforum.dto.out;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheStats {
+    private long hits;
+    private long misses;
+    private int size;
+}
@@ -0,0 +1,34 @@
+package fullforum.dto.out;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 通过 GET /api/documents/{id}/events 推送给客户端的事件
+ * userId: lockAcquired/lockReleased时为锁的持有者，documentUpdated时为最后修改者
+ * modifyCount: 仅documentUpdated时有值
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DocumentEvent {
+    private DocumentEventType type;
+    private long documentId;
+    private Long userId;
+    private Integer modifyCount;
+    private long at;
+
+    public static DocumentEvent lockAcquired(long documentId, long ownerId) {
+        return new DocumentEvent(DocumentEventType.lockAcquired, documentId, ownerId, null, System.currentTimeMillis());
+    }
+
+    public static DocumentEvent lockReleased(long documentId, long ownerId) {
+        return new DocumentEvent(DocumentEventType.lockReleased, documentId, ownerId, null, System.currentTimeMillis());
+    }
+
+    public static DocumentEvent documentUpdated(long documentId, Long modifierId, int modifyCount) {
+        return new DocumentEvent(DocumentEventType.documentUpdated, documentId, modifierId, modifyCount,
+                System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,5 @@
+package fullforum.dto.out;
+
+public enum DocumentEventType {
+    lockAcquired, lockReleased, documentUpdated
+}
@@ -0,0 +1,12 @@
+package fullforum.dto.out;
+
+/**
+ * 保存成功后文档的新版本号，客户端下一次增量保存以它为基准
+ */
+public class ModifyCountDto {
+    public int modifyCount;
+
+    public ModifyCountDto(int modifyCount) {
+        this.modifyCount = modifyCount;
+    }
+}
@@ -0,0 +1,19 @@
+package fullforum.dto.out;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游标分页的返回值
+ * nextCursor原样传回即可取下一页，为null则说明没有下一页了
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PageResult<T> {
+    private List<T> items;
+    private String nextCursor;
+}
@@ -4,10 +4,9 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import fullforum.data.models.Article;
 import lombok.Data;
-import org.modelmapper.ModelMapper;
 
 // '@Data' 是Lombok包的功能，Lombok需要IDEA额外安装Lombok扩展
-// 使用@Data的目的是提供getter和setter，让ModelMapper正常工作。ModelMapper用于将数据库实体映射到DTO。
+// convert中逐个字段手写复制，不再通过ModelMapper反射，列表接口上开销更小。新增字段时记得同步修改convert
 @Data
 public class QArticle {
     public long id;
@@ -17,8 +16,12 @@ public class QArticle {
 
     public Quser user;
 
-    public static QArticle convert(Article p, Quser user, ModelMapper mapper) {
-        var qArticle = mapper.map(p, QArticle.class);
+    public static QArticle convert(Article p, Quser user) {
+        var qArticle = new QArticle();
+        qArticle.id = p.getId();
+        qArticle.title = p.getTitle();
+        qArticle.text = p.getText();
+        qArticle.userId = p.getUserId();
         qArticle.user = user;
         return qArticle;
     }
@@ -4,21 +4,34 @@ import fullforum.data.models.Comment;
 import fullforum.data.models.Thumb;
 import lombok.Data;
 import lombok.Getter;
-import org.modelmapper.ModelMapper;
+
+import java.util.List;
 
 @Data
 public class QComment extends BaseQDto {
     private Long documentId;
     private Long userId;
     private Long thumbCount;
+    private Long replyCount;
     private String content;
     private Thumb myThumb;
 
+    /**
+     * 只有/api/comments/threaded会填充，其他接口为null
+     */
+    private List<QReply> replies;
+
     // 参考 QArticle
     public Quser user;
 
-    public static QComment convert(Comment c, Quser u, ModelMapper mapper, Thumb myThumb){
-        var qComment = mapper.map(c, QComment.class);
+    public static QComment convert(Comment c, Quser u, Thumb myThumb){
+        var qComment = new QComment();
+        qComment.copyRootFields(c);
+        qComment.documentId = c.getDocumentId();
+        qComment.userId = c.getUserId();
+        qComment.thumbCount = c.getThumbCount();
+        qComment.replyCount = c.getReplyCount();
+        qComment.content = c.getContent();
         qComment.setUser(u);
         qComment.setMyThumb(myThumb);
         return qComment;
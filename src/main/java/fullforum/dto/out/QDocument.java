@@ -6,7 +6,6 @@ import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
-import org.modelmapper.ModelMapper;
 
 import javax.persistence.Column;
 
@@ -27,12 +26,38 @@ public class QDocument extends BaseQDto {
     private String data;
     private int modifyCount;
 
-    public static QDocument convert(Document document, ModelMapper mapper) {
+    public static QDocument convert(Document document) {
+        var qDocument = convertSummary(document);
+        if (qDocument != null) {
+            qDocument.data = document.getData();
+        }
+        return qDocument;
+    }
+
+    /**
+     * 不含正文(data为null)，用于列表，不会加载文档正文
+     */
+    public static QDocument convertSummary(Document document) {
         if (document == null) {
             return null;
         }
 
-        return mapper.map(document, QDocument.class);
+        var qDocument = new QDocument();
+        qDocument.copyRootFields(document);
+        qDocument.creatorId = document.getCreatorId();
+        qDocument.teamId = document.getTeamId();
+        qDocument.title = document.getTitle();
+        qDocument.description = document.getDescription();
+        qDocument.isAbandoned = Boolean.TRUE.equals(document.getIsAbandoned());
+        qDocument.publicDocumentAccess = document.getPublicDocumentAccess();
+        qDocument.publicCommentAccess = document.getPublicCommentAccess();
+        qDocument.publicCanShare = Boolean.TRUE.equals(document.getPublicCanShare());
+        qDocument.teamDocumentAccess = document.getTeamDocumentAccess();
+        qDocument.teamCommentAccess = document.getTeamCommentAccess();
+        qDocument.teamCanShare = Boolean.TRUE.equals(document.getTeamCanShare());
+        qDocument.lastModifierId = document.getLastModifierId();
+        qDocument.modifyCount = document.getModifyCount();
+        return qDocument;
     }
 
 
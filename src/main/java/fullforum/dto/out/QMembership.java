@@ -3,7 +3,6 @@ package fullforum.dto.out;
 import fullforum.data.models.Membership;
 import lombok.Data;
 import lombok.Getter;
-import org.modelmapper.ModelMapper;
 
 @Data
 public class QMembership extends BaseQDto {
@@ -13,8 +12,11 @@ public class QMembership extends BaseQDto {
     private Quser user;
     private QTeam team;
 
-    public static QMembership convert(Membership membership, ModelMapper mapper, Quser quser, QTeam qTeam) {
-        var qMembership = mapper.map(membership, QMembership.class);
+    public static QMembership convert(Membership membership, Quser quser, QTeam qTeam) {
+        var qMembership = new QMembership();
+        qMembership.copyRootFields(membership);
+        qMembership.teamId = membership.getTeamId();
+        qMembership.userId = membership.getUserId();
         qMembership.setTeam(qTeam);
         qMembership.setUser(quser);
         return qMembership;
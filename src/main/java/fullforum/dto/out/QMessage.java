@@ -2,7 +2,6 @@ package fullforum.dto.out;
 
 import fullforum.data.models.Message;
 import lombok.Data;
-import org.modelmapper.ModelMapper;
 
 @Data
 public class QMessage extends BaseQDto{
@@ -20,8 +19,15 @@ public class QMessage extends BaseQDto{
 
     private Quser sender;
 
-    public static QMessage convert(Message message, Quser sender, ModelMapper mapper) {
-        QMessage qMessage = mapper.map(message, QMessage.class);
+    public static QMessage convert(Message message, Quser sender) {
+        var qMessage = new QMessage();
+        qMessage.copyRootFields(message);
+        qMessage.senderId = message.getSenderId();
+        qMessage.receiverId = message.getReceiverId();
+        qMessage.title = message.getTitle();
+        qMessage.content = message.getContent();
+        qMessage.link = message.getLink();
+        qMessage.haveRead = Boolean.TRUE.equals(message.getHaveRead());
         qMessage.setSender(sender);
         return qMessage;
     }
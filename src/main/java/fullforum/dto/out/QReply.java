@@ -3,7 +3,6 @@ package fullforum.dto.out;
 import fullforum.data.models.Reply;
 import fullforum.data.models.Thumb;
 import lombok.Data;
-import org.modelmapper.ModelMapper;
 
 @Data
 public class QReply extends BaseQDto {
@@ -21,8 +20,14 @@ public class QReply extends BaseQDto {
 
     private Thumb myThumb;
 
-    public static QReply convert(Reply reply, Quser user, ModelMapper mapper, Thumb myThumb) {
-        var qReply = mapper.map(reply, QReply.class);
+    public static QReply convert(Reply reply, Quser user, Thumb myThumb) {
+        var qReply = new QReply();
+        qReply.copyRootFields(reply);
+        qReply.commentId = reply.getCommentId();
+        qReply.userId = reply.getUserId();
+        qReply.targetUserId = reply.getTargetUserId();
+        qReply.thumbCount = reply.getThumbCount();
+        qReply.content = reply.getContent();
         qReply.setUser(user);
         qReply.setMyThumb(myThumb);
         return qReply;
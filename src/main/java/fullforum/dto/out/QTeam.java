@@ -4,7 +4,6 @@ import fullforum.data.models.Team;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
-import org.modelmapper.ModelMapper;
 
 @Data
 public class QTeam extends BaseQDto {
@@ -12,7 +11,12 @@ public class QTeam extends BaseQDto {
     private String name;
     private String description;
 
-    public static QTeam convert(Team team, ModelMapper mapper) {
-        return mapper.map(team, QTeam.class);
+    public static QTeam convert(Team team) {
+        var qTeam = new QTeam();
+        qTeam.copyRootFields(team);
+        qTeam.leaderId = team.getLeaderId();
+        qTeam.name = team.getName();
+        qTeam.description = team.getDescription();
+        return qTeam;
     }
 }
@@ -3,7 +3,6 @@ package fullforum.dto.out;
 import fullforum.data.models.TeamRequest;
 import lombok.Data;
 import lombok.Getter;
-import org.modelmapper.ModelMapper;
 
 @Data
 public class QTeamRequest extends BaseQDto {
@@ -15,8 +14,13 @@ public class QTeamRequest extends BaseQDto {
     private Quser sender;
     private QTeam team;
 
-    public static QTeamRequest convert(TeamRequest request, ModelMapper mapper, QTeam qteam, Quser quser) {
-        var qRequest = mapper.map(request, QTeamRequest.class);
+    public static QTeamRequest convert(TeamRequest request, QTeam qteam, Quser quser) {
+        var qRequest = new QTeamRequest();
+        qRequest.copyRootFields(request);
+        qRequest.userId = request.getUserId();
+        qRequest.teamId = request.getTeamId();
+        qRequest.isHandled = request.isHandled();
+        qRequest.isAgree = request.isAgree();
         qRequest.team = qteam;
         qRequest.sender = quser;
         return qRequest;
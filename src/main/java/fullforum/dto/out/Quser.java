@@ -2,20 +2,24 @@ package fullforum.dto.out;
 
 import fullforum.data.models.User;
 import lombok.Data;
-import org.modelmapper.ModelMapper;
 
-@Data// ModelMapper需要getter和setter
+@Data
 public class Quser {
     public long id;
     public String username;
     public String description;
     public String avatarUrl;
 
-    public static Quser convert(User user, ModelMapper mapper) {
+    public static Quser convert(User user) {
         if (user == null) {
             return null;
         }
 
-        return mapper.map(user, Quser.class);
+        var quser = new Quser();
+        quser.id = user.getId();
+        quser.username = user.getUsername();
+        quser.description = user.getDescription();
+        quser.avatarUrl = user.getAvatarUrl();
+        return quser;
     }
 }
@@ -0,0 +1,9 @@
+package fullforum.dto.out;
+
+public class UnreadCountDto {
+    public long count;
+
+    public UnreadCountDto(long count) {
+        this.count = count;
+    }
+}
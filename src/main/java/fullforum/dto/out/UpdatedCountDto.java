@@ -0,0 +1,12 @@
+package fullforum.dto.out;
+
+/**
+ * 批量操作实际修改的记录数
+ */
+public class UpdatedCountDto {
+    public int updated;
+
+    public UpdatedCountDto(int updated) {
+        this.updated = updated;
+    }
+}
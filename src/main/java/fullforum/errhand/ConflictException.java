@@ -0,0 +1,13 @@
+package fullforum.errhand;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 对应409状态码，例如客户端基于旧版本做了修改
+ */
+public class ConflictException extends ResponseStatusException {
+    public ConflictException(String message) {
+        super(HttpStatus.CONFLICT, message);
+    }
+}
@@ -12,4 +12,5 @@ public enum ErrorCode {
     FileTooLarge,
     RaceFailure,
     InvalidOperation,
+    InvalidCursor,
 }
@@ -0,0 +1,28 @@
+package fullforum.services;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 把内存状态的修改推迟到数据库事务提交之后，避免事务回滚后内存与数据库不一致
+ */
+public final class AfterCommit {
+    private AfterCommit() {
+    }
+
+    /**
+     * 当前有事务时，在提交后执行；没有事务则立即执行
+     */
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
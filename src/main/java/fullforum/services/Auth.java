@@ -1,16 +1,23 @@
 package fullforum.services;
 
 import fullforum.data.repos.UserRepository;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionException;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
 import java.util.Arrays;
 
 /**
  * 读取cookie来判断用户是否登录、并提供用户的id
+ * 优先使用登录时下发的token；旧客户端的用户名密码cookie仍然可用，验证通过后换发token
  */
 public class Auth implements IAuth {
+    public static final String TOKEN_COOKIE = "token";
+    public static final int COOKIE_MAX_AGE = (int) Duration.ofDays(180).toSeconds();
+
     /**
      * -1 则代表未登录
      */
@@ -24,12 +31,35 @@ public class Auth implements IAuth {
 
     private HttpServletRequest request;
     private UserRepository userRepository;
+    private SessionStore sessionStore;
+    private PasswordHasher passwordHasher;
     private HttpServletResponse response;
 
-    public Auth(HttpServletRequest request, HttpServletResponse response, UserRepository userRepository) {
+    public Auth(HttpServletRequest request, HttpServletResponse response, UserRepository userRepository,
+                SessionStore sessionStore, PasswordHasher passwordHasher) {
         this.request = request;
         this.response = response;
         this.userRepository = userRepository;
+        this.sessionStore = sessionStore;
+        this.passwordHasher = passwordHasher;
+    }
+
+    public static Cookie tokenCookie(String token) {
+        var cookie = new Cookie(TOKEN_COOKIE, token);
+        cookie.setMaxAge(token == null ? 0 : COOKIE_MAX_AGE);
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        return cookie;
+    }
+
+    public static String readCookie(Cookie[] cookies, String name) {
+        if (cookies == null) {
+            return null;
+        }
+        return Arrays.stream(cookies)
+                .filter(p -> p.getName().equals(name) && (p.getPath() == null || p.getPath().equals("/")))
+                .map(Cookie::getValue)
+                .findFirst().orElse(null);
     }
 
     private boolean innerload() {
@@ -41,33 +71,49 @@ public class Auth implements IAuth {
             return false;
         }
 
-        var username = Arrays.stream(cookies)
-                .filter(p -> p.getName().equals("username") && (p.getPath() == null || p.getPath().equals("/")))
-                .map(Cookie::getValue)
-                .findFirst().orElse(null);
+        var token = readCookie(cookies, TOKEN_COOKIE);
+        if (token != null) {
+            var tokenUserId = sessionStore.resolve(token);
+            if (tokenUserId != null) {
+                sessionStore.recordTokenRequest();
+                userId = tokenUserId;
+                return true;
+            }
+        }
 
-        var password = Arrays.stream(cookies)
-                .filter(p -> p.getName().equals("password") && (p.getPath() == null || p.getPath().equals("/")))
-                .map(Cookie::getValue)
-                .findFirst().orElse(null);
+        var username = readCookie(cookies, "username");
+        var password = readCookie(cookies, "password");
 
         if (username == null || password == null) {
+            if (token != null) {
+                sessionStore.recordRejectedRequest();
+            }
             return false;
         }
 
         var user = userRepository.findByUsername(username);
 
-        if (user == null) {
-            return false;
-        }
-
-        if (!user.checkPassword(password)) {
+        if (user == null || !user.checkPassword(password, passwordHasher)) {
+            sessionStore.recordRejectedRequest();
             return false;
         }
 
         // username and password matches
+        sessionStore.recordLegacyRequest();
         userId = user.getId();
 
+        // 换发token，之后的请求不再携带密码。
+        // token在独立的事务中提交后才改写cookie，请求本身失败回滚时客户端也不会拿到不存在的token
+        String issued;
+        try {
+            issued = sessionStore.issueCommitted(userId);
+        } catch (DataAccessException | TransactionException e) {
+            // 换发失败时保留旧cookie，下次请求再试
+            return true;
+        }
+        response.addCookie(tokenCookie(issued));
+        response.addCookie(clearedCookie("password"));
+
         return true;
     }
 
@@ -76,17 +122,18 @@ public class Auth implements IAuth {
         loaded = true;
         // if not success, clear some cookie
         if (!success) {
-            var cookie1 = new Cookie("username", null);
-            cookie1.setPath("/");
-
-            var cookie2 = new Cookie("password", null);
-            cookie2.setPath("/");
-
-            response.addCookie(cookie1);
-            response.addCookie(cookie2);
+            response.addCookie(clearedCookie("username"));
+            response.addCookie(clearedCookie("password"));
+            response.addCookie(tokenCookie(null));
         }
     }
 
+    private static Cookie clearedCookie(String name) {
+        var cookie = new Cookie(name, null);
+        cookie.setPath("/");
+        return cookie;
+    }
+
     @Override
     public boolean isLoggedIn() {
         if (!loaded) {
@@ -0,0 +1,200 @@
+package fullforum.services;
+
+import fullforum.data.models.BlobContent;
+import fullforum.data.repos.BlobContentRepository;
+import fullforum.data.repos.BlobRepository;
+import fullforum.dto.out.BlobStorageStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 上传内容的引用计数
+ * 每个Blob2按contentHash引用一份BlobContent，相同内容只保存一个文件；
+ * 旧的/api/blobs/{id}通过Blob2.contentHash找到文件，url不变
+ */
+@Service
+public class BlobContentService {
+    private static final Logger log = LoggerFactory.getLogger(BlobContentService.class);
+
+    static final int BATCH_SIZE = 500;
+
+    private static final String ADD_REFERENCES =
+            "insert into blob_content (id, created_at, updated_at, content_hash, size, ref_count)" +
+            " values (?, ?, ?, ?, ?, ?) on duplicate key update ref_count = ref_count + ?, updated_at = ?";
+
+    @Autowired
+    BlobContentRepository blobContentRepository;
+
+    @Autowired
+    BlobRepository blobRepository;
+
+    @Autowired
+    FileBlobStore blobStore;
+
+    @Autowired
+    Snowflake snowflake;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    private final boolean jobEnabled;
+    private final long orphanGraceMillis;
+    private final TransactionTemplate transactionTemplate;
+
+    public BlobContentService(@Value("${fullforum.blob-dedup.enabled:true}") boolean jobEnabled,
+                              @Value("${fullforum.blob-dedup.orphan-grace-ms:3600000}") long orphanGraceMillis,
+                              PlatformTransactionManager transactionManager) {
+        this.jobEnabled = jobEnabled;
+        this.orphanGraceMillis = orphanGraceMillis;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 新的Blob2引用了这份内容，需要在保存Blob2的事务中调用
+     */
+    public void addReference(FileBlobStore.StoredContent stored) {
+        addReferences(List.of(stored));
+    }
+
+    /**
+     * 每份内容被新引用了几次就加几，没有这一行时插入。相同的内容合并为一行，
+     * 所有内容用一个JDBC批量执行；按hash排序，并发的批量上传以相同的顺序加锁。
+     * 新内容也在调用方的事务中插入，不另开事务占用第二个连接，并发执行也不会违反唯一约束
+     */
+    public void addReferences(Collection<FileBlobStore.StoredContent> contents) {
+        var counts = new TreeMap<String, long[]>();
+        for (var stored : contents) {
+            counts.computeIfAbsent(stored.contentHash, hash -> new long[]{stored.size, 0})[1]++;
+        }
+        if (counts.isEmpty()) {
+            return;
+        }
+        var now = System.currentTimeMillis();
+        var rows = new ArrayList<Object[]>(counts.size());
+        counts.forEach((hash, sizeAndCount) -> rows.add(new Object[]{
+                snowflake.nextId(), now, now, hash, sizeAndCount[0], sizeAndCount[1], sizeAndCount[1], now}));
+        jdbcTemplate.batchUpdate(ADD_REFERENCES, rows);
+    }
+
+    @Scheduled(initialDelayString = "${fullforum.blob-dedup.initial-delay-ms:600000}",
+            fixedDelayString = "${fullforum.blob-dedup.interval-ms:86400000}")
+    void scheduledReconcile() {
+        if (jobEnabled) {
+            var stats = reconcile();
+            log.info("blob storage: {} blobs, {} contents, {} bytes saved by dedup",
+                    stats.getBlobs(), stats.getContents(), stats.getSavedBytes());
+        }
+    }
+
+    /**
+     * 按Blob2重新统计每份内容的引用数：给旧数据补上BlobContent，修正计数的偏差，
+     * 清理超过宽限期仍没有引用的文件（包括事务回滚后留下的没有BlobContent行的文件）。相同内容的旧上传由此合并为一份
+     */
+    public BlobStorageStats reconcile() {
+        var groups = blobRepository.countByContentHash();
+        for (int from = 0; from < groups.size(); from += BATCH_SIZE) {
+            var batch = groups.subList(from, Math.min(from + BATCH_SIZE, groups.size()));
+            transactionTemplate.execute(status -> {
+                reconcileBatch(batch);
+                return null;
+            });
+        }
+        transactionTemplate.execute(status -> blobContentRepository.resetOrphans(System.currentTimeMillis()));
+        var before = System.currentTimeMillis() - orphanGraceMillis;
+        removeOrphans(before);
+        removeUnreferencedFiles(before);
+        return stats();
+    }
+
+    public BlobStorageStats stats() {
+        var logical = blobRepository.logicalTotals().get(0);
+        var stored = blobContentRepository.storedTotals().get(0);
+        var logicalBytes = ((Number) logical[1]).longValue();
+        var storedBytes = ((Number) stored[1]).longValue();
+        return new BlobStorageStats(((Number) logical[0]).longValue(), logicalBytes,
+                ((Number) stored[0]).longValue(), storedBytes, Math.max(0, logicalBytes - storedBytes));
+    }
+
+    private void reconcileBatch(List<Object[]> batch) {
+        var hashes = batch.stream().map(row -> (String) row[0]).collect(Collectors.toList());
+        var existing = new HashMap<String, BlobContent>();
+        for (var content : blobContentRepository.findByContentHashIn(hashes)) {
+            existing.put(content.getContentHash(), content);
+        }
+        for (var row : batch) {
+            var contentHash = (String) row[0];
+            var refCount = ((Number) row[2]).longValue();
+            var content = existing.get(contentHash);
+            if (content == null) {
+                content = new BlobContent(snowflake.nextId(), contentHash, ((Number) row[1]).longValue());
+                content.setRefCount(refCount);
+                blobContentRepository.save(content);
+            } else if (content.getRefCount() != refCount) {
+                content.setRefCount(refCount);
+            }
+        }
+    }
+
+    /**
+     * 已经写入磁盘、但上传请求的事务回滚了的文件没有BlobContent行，超过宽限期后删除
+     */
+    private void removeUnreferencedFiles(long before) {
+        List<String> hashes;
+        try {
+            hashes = blobStore.listUnchangedSince(before);
+        } catch (IOException e) {
+            log.warn("failed to list blob contents", e);
+            return;
+        }
+        for (int from = 0; from < hashes.size(); from += BATCH_SIZE) {
+            var batch = hashes.subList(from, Math.min(from + BATCH_SIZE, hashes.size()));
+            var known = new HashSet<String>();
+            for (var content : blobContentRepository.findByContentHashIn(batch)) {
+                known.add(content.getContentHash());
+            }
+            for (var contentHash : batch) {
+                if (known.contains(contentHash)) {
+                    continue;
+                }
+                // 同时有人上传了相同内容时文件的修改时间已经更新，不会被删除
+                try {
+                    blobStore.deleteIfUnchangedSince(contentHash, before);
+                } catch (IOException e) {
+                    log.warn("failed to delete blob content {}", contentHash, e);
+                }
+            }
+        }
+    }
+
+    private void removeOrphans(long before) {
+        for (var content : blobContentRepository.findUnreferenced(before)) {
+            Integer deleted = transactionTemplate.execute(status ->
+                    blobContentRepository.deleteIfUnreferenced(content.getId()));
+            if (deleted == null || deleted == 0) {
+                continue;
+            }
+            // 同时有人上传了相同内容时文件的修改时间已经更新，不会被删除
+            try {
+                blobStore.deleteIfUnchangedSince(content.getContentHash(), before);
+            } catch (IOException e) {
+                log.warn("failed to delete blob content {}", content.getContentHash(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package fullforum.services;
+
+import fullforum.data.models.Blob2;
+import fullforum.dto.out.BatchUploadResult;
+import fullforum.errhand.BadRequestException;
+import fullforum.errhand.ErrorCode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上传文件：内容写入FileBlobStore，元数据写入Blob2
+ * 批量上传时各个文件的读取、计算摘要和写盘在线程池中并行进行，元数据在调用方的事务中一次批量插入
+ */
+@Service
+public class BlobUploadService {
+
+    @Autowired
+    FileBlobStore blobStore;
+
+    @Autowired
+    BlobContentService blobContentService;
+
+    @Autowired
+    Snowflake snowflake;
+
+    @Autowired
+    EntityManager entityManager;
+
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final ThreadPoolExecutor executor;
+
+    public BlobUploadService(@Value("${fullforum.blob-upload.max-file-size:10MB}") DataSize maxFileSize,
+                             @Value("${fullforum.blob-upload.max-files:20}") int maxFiles,
+                             @Value("${fullforum.blob-upload.threads:4}") int threads) {
+        this.maxFileBytes = maxFileSize.toBytes();
+        this.maxFiles = maxFiles;
+        // 队列满时由请求线程自己处理，相当于限制了并发
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), runnable -> {
+            var thread = new Thread(runnable, "blob-upload");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 文件过大时抛出BadRequestException
+     */
+    public Blob2 upload(MultipartFile file) throws IOException {
+        checkSize(file);
+        var stored = store(file);
+        var blob = toBlob(stored);
+        entityManager.persist(blob);
+        blobContentService.addReference(stored.content);
+        return blob;
+    }
+
+    /**
+     * 单个文件失败不影响其他文件，结果与上传的文件一一对应
+     */
+    public BatchUploadResult uploadAll(MultipartFile[] files) {
+        if (files.length > maxFiles) {
+            throw new BadRequestException(ErrorCode.InvalidOperation, "一次最多上传" + maxFiles + "个文件");
+        }
+        var futures = new ArrayList<CompletableFuture<Stored>>(files.length);
+        for (var file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                checkSize(file);
+                try {
+                    return store(file);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        var results = new ArrayList<BatchUploadResult.FileResult>(files.length);
+        var urls = new ArrayList<String>();
+        var referenced = new ArrayList<FileBlobStore.StoredContent>(files.length);
+        for (int i = 0; i < files.length; i++) {
+            var name = files[i].getOriginalFilename();
+            try {
+                var stored = futures.get(i).join();
+                var blob = toBlob(stored);
+                entityManager.persist(blob);
+                referenced.add(stored.content);
+                var url = "/api/blobs/" + blob.getId();
+                urls.add(url);
+                results.add(BatchUploadResult.FileResult.success(name, url));
+            } catch (CompletionException e) {
+                results.add(BatchUploadResult.FileResult.failure(name, messageOf(e.getCause())));
+            } catch (RuntimeException e) {
+                results.add(BatchUploadResult.FileResult.failure(name, messageOf(e)));
+            }
+        }
+        // 先persist全部Blob2，引用计数最后一次批量更新；中间不触发flush，Blob2在提交时按JDBC批量插入
+        blobContentService.addReferences(referenced);
+        return new BatchUploadResult(files.length - urls.size(), urls, results);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void checkSize(MultipartFile file) {
+        if (file.getSize() > maxFileBytes) {
+            throw new BadRequestException(ErrorCode.FileTooLarge,
+                    "文件超过" + DataSize.ofBytes(maxFileBytes).toKilobytes() + "KB了");
+        }
+    }
+
+    private Stored store(MultipartFile file) throws IOException {
+        try (var input = new BufferedInputStream(file.getInputStream())) {
+            var contentType = ContentSniffer.sniff(input);
+            return new Stored(blobStore.save(input), contentType);
+        }
+    }
+
+    /**
+     * Blob2和引用计数在调用方的事务中保存，所以在请求线程上执行
+     */
+    private Blob2 toBlob(Stored stored) {
+        return new Blob2(snowflake.nextId(), stored.content.size, stored.contentType, stored.content.contentHash);
+    }
+
+    private static String messageOf(Throwable e) {
+        if (e instanceof BadRequestException) {
+            return ((BadRequestException) e).getReason();
+        }
+        return "文件保存失败";
+    }
+
+    private static class Stored {
+        final FileBlobStore.StoredContent content;
+        final String contentType;
+
+        Stored(FileBlobStore.StoredContent content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package fullforum.services;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按总字节数限制容量的LRU缓存
+ * 超过容量时淘汰最久未访问的项；单个值超过总容量时不缓存
+ */
+public class ByteSizeLruCache<K> {
+    private final long maxBytes;
+    private long totalBytes = 0;
+
+    private final LinkedHashMap<K, byte[]> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ByteSizeLruCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes should be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return 缓存的值，不存在则返回null
+     */
+    public synchronized byte[] get(K key) {
+        var value = map.get(key);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, byte[] value) {
+        if (value.length > maxBytes) {
+            return;
+        }
+        var old = map.put(key, value);
+        if (old != null) {
+            totalBytes -= old.length;
+        }
+        totalBytes += value.length;
+        var iterator = map.values().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            totalBytes -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,86 @@
+package fullforum.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 根据文件开头的魔数判断类型，不信任客户端上传时声明的Content-Type
+ */
+public final class ContentSniffer {
+    public static final String OCTET_STREAM = "application/octet-stream";
+
+    static final int HEAD_LENGTH = 16;
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * 读取开头几个字节后回到原来的位置，input必须支持mark
+     * 无法识别时返回application/octet-stream
+     */
+    public static String sniff(InputStream input) throws IOException {
+        if (!input.markSupported()) {
+            throw new IllegalArgumentException("input should support mark");
+        }
+        var head = new byte[HEAD_LENGTH];
+        input.mark(HEAD_LENGTH);
+        int length = 0;
+        try {
+            int n;
+            while (length < HEAD_LENGTH && (n = input.read(head, length, HEAD_LENGTH - length)) > 0) {
+                length += n;
+            }
+        } finally {
+            input.reset();
+        }
+        var type = sniff(head, length);
+        return type == null ? OCTET_STREAM : type;
+    }
+
+    /**
+     * 无法识别时返回null
+     */
+    public static String sniff(byte[] head, int length) {
+        if (startsWith(head, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0, 'G', 'I', 'F', '8', '7', 'a')
+                || startsWith(head, length, 0, 'G', 'I', 'F', '8', '9', 'a')) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, 0, 'R', 'I', 'F', 'F') && startsWith(head, length, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 0, 'B', 'M')) {
+            return "image/bmp";
+        }
+        if (startsWith(head, length, 0, 0x00, 0x00, 0x01, 0x00)) {
+            return "image/x-icon";
+        }
+        if (startsWith(head, length, 0, '%', 'P', 'D', 'F', '-')) {
+            return "application/pdf";
+        }
+        if (startsWith(head, length, 4, 'f', 't', 'y', 'p')) {
+            return "video/mp4";
+        }
+        if (startsWith(head, length, 0, 'P', 'K', 0x03, 0x04)) {
+            return "application/zip";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, int... magic) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
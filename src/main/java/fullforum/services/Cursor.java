@@ -0,0 +1,75 @@
+package fullforum.services;
+
+import fullforum.errhand.BadRequestException;
+import fullforum.errhand.ErrorCode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 键集分页（keyset pagination）的游标
+ * 记录上一页最后一行的(updatedAt, id)，下一页从这一行之后继续查，不使用offset，所以翻到多深代价都一样
+ * 对前端来说游标是不透明的字符串
+ */
+public class Cursor {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * 只按id排序的列表，该值为0
+     */
+    public final long timestamp;
+
+    public final long id;
+
+    public Cursor(long timestamp, long id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    public static Cursor ofId(long id) {
+        return new Cursor(0, id);
+    }
+
+    public String encode() {
+        var raw = timestamp + "." + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return cursor为null时返回null，即第一页
+     */
+    public static Cursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            var raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            var dot = raw.indexOf('.');
+            return new Cursor(Long.parseLong(raw.substring(0, dot)), Long.parseLong(raw.substring(dot + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new BadRequestException(ErrorCode.InvalidCursor, "无效的分页游标");
+        }
+    }
+
+    public static int normalizeLimit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * 查询时应多取一行（limit + 1）来判断是否还有下一页
+     * 若有，则就地去掉多取的那一行，并返回下一页的游标；limit为null代表不分页
+     */
+    public static <T> String trimPage(List<T> rows, Integer limit, Function<T, Cursor> cursorOf) {
+        if (limit == null || rows.size() <= limit) {
+            return null;
+        }
+        rows.subList(limit, rows.size()).clear();
+        return cursorOf.apply(rows.get(limit - 1)).encode();
+    }
+}
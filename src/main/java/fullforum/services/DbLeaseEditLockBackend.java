@@ -0,0 +1,121 @@
+package fullforum.services;
+
+import fullforum.data.models.ELock;
+import fullforum.data.repos.ELockRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 多节点部署时使用，ELock表中的一行就是一个租约，通过条件UPDATE实现CAS
+ * 同一持有者在 TIME_OUT / 2 内的续期不写数据库，只更新本节点的记录。
+ * 因此对其他节点而言租约最早会在最后一次续期后 TIME_OUT / 2 过期，编辑器的续期间隔应小于它
+ */
+@Service
+@ConditionalOnProperty(name = "fullforum.edit-lock.backend", havingValue = "db")
+public class DbLeaseEditLockBackend implements EditLockBackend {
+
+    private final ELockRepository elockRepository;
+    private final Snowflake snowflake;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+
+    /**
+     * 本节点最近一次写入数据库的租约
+     */
+    private final ConcurrentHashMap<Long, EditLease> written = new ConcurrentHashMap<>();
+
+    public DbLeaseEditLockBackend(ELockRepository elockRepository, Snowflake snowflake,
+                                  PlatformTransactionManager transactionManager) {
+        this.elockRepository = elockRepository;
+        this.snowflake = snowflake;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public EditLease tryAcquire(long documentId, long userId, long now) {
+        var cached = written.get(documentId);
+        if (cached != null && cached.isOwnedBy(userId) && now - cached.getRenewedAt() < ELock.TIME_OUT / 2) {
+            return cached;
+        }
+
+        var updated = conditionalAcquire(documentId, userId, now);
+        if (updated == 0) {
+            var lock = elockRepository.findELockByDocumentId(documentId);
+            if (lock != null) {
+                // 被其他人持有
+                written.remove(documentId);
+                return new EditLease(lock.getLastOwnerId(), lock.getLastAcquiredAt(), lock.getLastAcquiredAt());
+            }
+            // 旧文档还没有ELock行。并发插入时只有一个能成功，另一个违反唯一约束后直接重试条件更新
+            insertRow(documentId);
+            return tryAcquire(documentId, userId, now);
+        }
+
+        var ownedSince = cached != null && cached.isOwnedBy(userId) && !cached.isExpired(now)
+                ? cached.getOwnedSince() : now;
+        var lease = new EditLease(userId, ownedSince, now);
+        written.put(documentId, lease);
+        return lease;
+    }
+
+    @Override
+    public boolean isHeldLocally(long documentId, long userId, long now) {
+        var cached = written.get(documentId);
+        return cached != null && cached.isOwnedBy(userId) && now - cached.getRenewedAt() < ELock.TIME_OUT / 2;
+    }
+
+    @Override
+    public Long getOwner(long documentId, long now) {
+        var lock = elockRepository.findELockByDocumentId(documentId);
+        if (lock == null || now - lock.getLastAcquiredAt() > ELock.TIME_OUT) {
+            return null;
+        }
+        return lock.getLastOwnerId();
+    }
+
+    @Override
+    public boolean release(long documentId, long userId, long now) {
+        written.remove(documentId);
+        Integer updated = transactionTemplate.execute(status ->
+                elockRepository.release(documentId, userId, now - ELock.TIME_OUT));
+        return updated != null && updated == 1;
+    }
+
+    @Override
+    public void forget(long documentId) {
+        written.remove(documentId);
+    }
+
+    @Override
+    public void clear() {
+        written.clear();
+    }
+
+    @Override
+    public boolean isDurable() {
+        return true;
+    }
+
+    private int conditionalAcquire(long documentId, long userId, long now) {
+        Integer updated = transactionTemplate.execute(status ->
+                elockRepository.tryAcquire(documentId, userId, now, now - ELock.TIME_OUT));
+        return updated == null ? 0 : updated;
+    }
+
+    private void insertRow(long documentId) {
+        try {
+            newTransactionTemplate.execute(status ->
+                    elockRepository.saveAndFlush(new ELock(snowflake.nextId(), documentId)));
+        } catch (DataIntegrityViolationException e) {
+            // 已经被其他请求插入
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package fullforum.services;
+
+import fullforum.dto.out.DocumentEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 按文档分组的SSE订阅，代替客户端轮询锁的持有者和文档内容
+ * 事件在事务提交后由单独的线程发送，不阻塞发布者。只推送给连接在本节点上的客户端
+ */
+@Service
+public class DocumentEventHub {
+
+    @Value("${fullforum.document-events.timeout-ms:1800000}")
+    long timeoutMillis;
+
+    private final ConcurrentHashMap<Long, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final Executor dispatcher;
+
+    @Autowired
+    public DocumentEventHub() {
+        this(Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "document-events");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    DocumentEventHub(Executor dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    public SseEmitter subscribe(long documentId) {
+        var emitter = new SseEmitter(timeoutMillis);
+        subscribe(documentId, emitter);
+        return emitter;
+    }
+
+    void subscribe(long documentId, SseEmitter emitter) {
+        subscribers.compute(documentId, (id, emitters) -> {
+            if (emitters == null) {
+                emitters = new CopyOnWriteArrayList<>();
+            }
+            emitters.add(emitter);
+            return emitters;
+        });
+        Runnable remove = () -> unsubscribe(documentId, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+    }
+
+    /**
+     * 只发给这一个订阅者，用于订阅时补发当前状态
+     */
+    public void sendTo(SseEmitter emitter, DocumentEvent event) {
+        try {
+            emitter.send(toSse(event));
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 当前事务提交后再发送，事务回滚则不发送
+     */
+    public void publish(DocumentEvent event) {
+        AfterCommit.run(() -> dispatcher.execute(() -> deliver(event)));
+    }
+
+    public int subscriberCount(long documentId) {
+        var emitters = subscribers.get(documentId);
+        return emitters == null ? 0 : emitters.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (dispatcher instanceof ExecutorService) {
+            ((ExecutorService) dispatcher).shutdown();
+        }
+        subscribers.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        subscribers.clear();
+    }
+
+    private void deliver(DocumentEvent event) {
+        var emitters = subscribers.get(event.getDocumentId());
+        if (emitters == null) {
+            return;
+        }
+        for (var emitter : emitters) {
+            try {
+                emitter.send(toSse(event));
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开
+                unsubscribe(event.getDocumentId(), emitter);
+            }
+        }
+    }
+
+    private void unsubscribe(long documentId, SseEmitter emitter) {
+        subscribers.computeIfPresent(documentId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    private static SseEmitter.SseEventBuilder toSse(DocumentEvent event) {
+        return SseEmitter.event()
+                .name(event.getType().name())
+                .data(event, MediaType.APPLICATION_JSON);
+    }
+}
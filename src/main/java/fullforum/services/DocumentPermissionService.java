@@ -0,0 +1,183 @@
+package fullforum.services;
+
+import fullforum.data.models.Access;
+import fullforum.data.models.Document;
+import fullforum.data.repos.DocumentRepository;
+import fullforum.data.repos.MembershipRepository;
+import fullforum.dto.out.CacheStats;
+import fullforum.dto.out.UserPermission;
+import fullforum.errhand.NotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 计算用户对文档的权限
+ * 单个文档的权限按(userId, documentId)缓存；批量计算时由调用方一次性提供用户所在的团队
+ */
+@Service
+public class DocumentPermissionService {
+
+    public enum AccessorLevel {
+        publicLevel, teamMember, self
+    }
+
+    @Autowired
+    DocumentRepository documentRepository;
+
+    @Autowired
+    MembershipRepository membershipRepository;
+
+    private final TimedLruCache<PermissionKey, UserPermission> cache;
+
+    public DocumentPermissionService(
+            @Value("${fullforum.permission-cache.max-size:10000}") int maxSize,
+            @Value("${fullforum.permission-cache.ttl-ms:60000}") long ttlMillis) {
+        cache = new TimedLruCache<>(maxSize, ttlMillis);
+    }
+
+    /**
+     * 文档不存在时抛出NotFoundException
+     */
+    public UserPermission getPermission(long userId, long documentId) {
+        var key = new PermissionKey(userId, documentId);
+        var permission = cache.get(key);
+        if (permission != null) {
+            return permission;
+        }
+        var document = documentRepository.findById(documentId).orElse(null);
+        if (document == null) {
+            throw new NotFoundException("文档不存在");
+        }
+        permission = computePermission(document, userId, getAccessorLevel(document, userId));
+        cache.put(key, permission);
+        return permission;
+    }
+
+    /**
+     * 调用方已经查出了文档时使用，避免再查一次文档
+     */
+    public UserPermission getPermission(long userId, Document document) {
+        var key = new PermissionKey(userId, document.getId());
+        var permission = cache.get(key);
+        if (permission != null) {
+            return permission;
+        }
+        permission = computePermission(document, userId, getAccessorLevel(document, userId));
+        cache.put(key, permission);
+        return permission;
+    }
+
+    /**
+     * 用户所在的全部团队，配合 {@link #computePermission(Document, long, Set)} 批量计算权限
+     */
+    public Set<Long> findTeamIds(long userId) {
+        return new HashSet<>(membershipRepository.findTeamIdsByUserId(userId));
+    }
+
+    /**
+     * 完全在内存中计算，不访问数据库，也不经过缓存
+     */
+    public UserPermission computePermission(Document document, long userId, Set<Long> teamIds) {
+        AccessorLevel level;
+        if (userId == document.getCreatorId()) {
+            level = AccessorLevel.self;
+        } else if (document.getTeamId() != null && teamIds.contains(document.getTeamId())) {
+            level = AccessorLevel.teamMember;
+        } else {
+            level = AccessorLevel.publicLevel;
+        }
+        return computePermission(document, userId, level);
+    }
+
+    /**
+     * 文档中影响权限的字段，修改前后不同时需要调用 {@link #invalidateDocument(long)}
+     */
+    public static Object accessFingerprint(Document document) {
+        return Arrays.asList(document.getCreatorId(), document.getTeamId(),
+                document.getPublicDocumentAccess(), document.getPublicCommentAccess(), document.getPublicCanShare(),
+                document.getTeamDocumentAccess(), document.getTeamCommentAccess(), document.getTeamCanShare());
+    }
+
+    public void invalidateDocument(long documentId) {
+        cache.removeIf(key -> key.documentId == documentId);
+        AfterCommit.run(() -> cache.removeIf(key -> key.documentId == documentId));
+    }
+
+    /**
+     * 用户加入或离开团队时调用
+     */
+    public void invalidateUser(long userId) {
+        cache.removeIf(key -> key.userId == userId);
+        AfterCommit.run(() -> cache.removeIf(key -> key.userId == userId));
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+        AfterCommit.run(cache::clear);
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(cache.hits(), cache.misses(), cache.size());
+    }
+
+    private AccessorLevel getAccessorLevel(Document document, long accessorId) {
+        if (accessorId == document.getCreatorId()) {
+            return AccessorLevel.self;
+        }
+
+        if (document.getTeamId() == null) {
+            return AccessorLevel.publicLevel;
+        }
+
+        var membership = membershipRepository.findByUserIdAndTeamId(accessorId, document.getTeamId());
+        if (membership != null) {
+            return AccessorLevel.teamMember;
+        } else {
+            return AccessorLevel.publicLevel;
+        }
+    }
+
+    private UserPermission computePermission(Document document, long userId, AccessorLevel level) {
+        if (level == AccessorLevel.self) {
+            return new UserPermission(userId, Access.ReadWrite, Access.ReadWrite, true);
+        }
+
+        if (level == AccessorLevel.teamMember) {
+            return new UserPermission(userId, document.getTeamDocumentAccess(),
+                    document.getTeamCommentAccess(), document.getTeamCanShare());
+        }
+
+        // public
+        return new UserPermission(userId, document.getPublicDocumentAccess(),
+                document.getPublicCommentAccess(), document.getPublicCanShare());
+    }
+
+    private static final class PermissionKey {
+        final long userId;
+        final long documentId;
+
+        PermissionKey(long userId, long documentId) {
+            this.userId = userId;
+            this.documentId = documentId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            var that = (PermissionKey) o;
+            return userId == that.userId && documentId == that.documentId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, documentId);
+        }
+    }
+}
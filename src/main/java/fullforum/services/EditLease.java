@@ -0,0 +1,52 @@
+package fullforum.services;
+
+import fullforum.data.models.ELock;
+
+/**
+ * 某一时刻编辑锁的持有情况，不可变，便于在ConcurrentHashMap中做CAS
+ */
+public final class EditLease {
+    private final long ownerId;
+    private final long ownedSince;
+    private final long renewedAt;
+
+    public EditLease(long ownerId, long ownedSince, long renewedAt) {
+        this.ownerId = ownerId;
+        this.ownedSince = ownedSince;
+        this.renewedAt = renewedAt;
+    }
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+
+    /**
+     * 当前持有者获得锁的时间，续期不会改变它
+     */
+    public long getOwnedSince() {
+        return ownedSince;
+    }
+
+    public long getRenewedAt() {
+        return renewedAt;
+    }
+
+    public boolean isExpired(long now) {
+        return now - renewedAt > ELock.TIME_OUT;
+    }
+
+    public boolean isOwnedBy(long userId) {
+        return ownerId == userId;
+    }
+
+    /**
+     * 锁是否是在now这一刻刚刚被userId获得的（而不是续期）
+     */
+    public boolean isNewlyAcquiredBy(long userId, long now) {
+        return ownerId == userId && ownedSince == now;
+    }
+
+    public EditLease renew(long now) {
+        return new EditLease(ownerId, ownedSince, now);
+    }
+}
@@ -0,0 +1,40 @@
+package fullforum.services;
+
+/**
+ * 编辑锁的存储方式，由 fullforum.edit-lock.backend 选择：
+ * local —— 单节点，锁只保存在内存中；db —— 多节点共享，锁以租约的形式保存在ELock表中
+ */
+public interface EditLockBackend {
+
+    /**
+     * 尝试获得或续期锁，返回操作之后的持有情况，持有者不是userId说明获取失败
+     */
+    EditLease tryAcquire(long documentId, long userId, long now);
+
+    /**
+     * 不访问数据库，仅凭本节点的状态判断userId是否仍然持有锁
+     */
+    boolean isHeldLocally(long documentId, long userId, long now);
+
+    /**
+     * 锁空闲时返回null
+     */
+    Long getOwner(long documentId, long now);
+
+    /**
+     * 只有持有者才能释放，返回是否释放成功
+     */
+    boolean release(long documentId, long userId, long now);
+
+    /**
+     * 文档删除时丢弃本节点上与它有关的状态
+     */
+    void forget(long documentId);
+
+    void clear();
+
+    /**
+     * 为false时锁只存在于内存中，由 {@link EditLockManager} 把持有者的变化记录到ELock表
+     */
+    boolean isDurable();
+}
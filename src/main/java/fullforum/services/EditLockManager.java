@@ -0,0 +1,117 @@
+package fullforum.services;
+
+import fullforum.data.models.ELock;
+import fullforum.data.repos.DocumentRepository;
+import fullforum.data.repos.ELockRepository;
+import fullforum.dto.out.DocumentEvent;
+import fullforum.errhand.BadRequestException;
+import fullforum.errhand.ErrorCode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 文档编辑锁
+ * 编辑器每隔几秒续期一次，续期时不访问数据库；只有持有者发生变化时才写入ELock表
+ */
+@Service
+public class EditLockManager {
+
+    @Autowired
+    EditLockBackend backend;
+
+    @Autowired
+    DocumentRepository documentRepository;
+
+    @Autowired
+    ELockRepository elockRepository;
+
+    @Autowired
+    Snowflake snowflake;
+
+    @Autowired
+    DocumentEventHub eventHub;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public EditLockManager(PlatformTransactionManager transactionManager) {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 创建文档时调用，预先建好ELock行，之后的获取都只需要条件更新
+     */
+    public void prepare(long documentId) {
+        elockRepository.save(new ELock(snowflake.nextId(), documentId));
+    }
+
+    /**
+     * 返回操作之后的持有情况，持有者不是userId说明锁被别人占用
+     * 文档不存在时抛出BadRequestException
+     */
+    public EditLease tryAcquire(long documentId, long userId) {
+        var now = System.currentTimeMillis();
+        // 续期时文档在获得锁时已经确认存在过，删除文档时会调用forget
+        if (!backend.isHeldLocally(documentId, userId, now) && !documentRepository.existsById(documentId)) {
+            throw new BadRequestException(ErrorCode.EntityNotExist, "文档不存在");
+        }
+
+        var lease = backend.tryAcquire(documentId, userId, now);
+        if (!lease.isNewlyAcquiredBy(userId, now)) {
+            return lease;
+        }
+        eventHub.publish(DocumentEvent.lockAcquired(documentId, userId));
+        if (!backend.isDurable()) {
+            Integer updated = transactionTemplate.execute(status ->
+                    elockRepository.assignOwner(documentId, userId, now));
+            if (updated == null || updated == 0) {
+                // 旧文档没有预先创建ELock行。并发插入时只有一个能成功，另一个违反唯一约束后直接更新
+                insertRow(documentId);
+                transactionTemplate.execute(status -> elockRepository.assignOwner(documentId, userId, now));
+            }
+        }
+        return lease;
+    }
+
+    /**
+     * 锁空闲时返回null
+     */
+    public Long getOwner(long documentId) {
+        return backend.getOwner(documentId, System.currentTimeMillis());
+    }
+
+    public boolean release(long documentId, long userId) {
+        var now = System.currentTimeMillis();
+        var released = backend.release(documentId, userId, now);
+        if (released && !backend.isDurable()) {
+            // 内存中已经确认了持有者，ELock表中只记录了获得锁的时间，这里不再比较时间
+            transactionTemplate.execute(status -> elockRepository.release(documentId, userId, 0));
+        }
+        if (released) {
+            eventHub.publish(DocumentEvent.lockReleased(documentId, userId));
+        }
+        return released;
+    }
+
+    public void forget(long documentId) {
+        backend.forget(documentId);
+    }
+
+    public void clear() {
+        backend.clear();
+    }
+
+    /**
+     * 获取锁不在请求的事务中进行，插入失败只回滚这一次插入
+     */
+    private void insertRow(long documentId) {
+        try {
+            transactionTemplate.execute(status ->
+                    elockRepository.saveAndFlush(new ELock(snowflake.nextId(), documentId)));
+        } catch (DataIntegrityViolationException e) {
+            // 已经被其他请求插入
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package fullforum.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 上传文件的内容存放在本地目录，按内容的SHA-256命名：root/ab/cd/abcd...
+ * 写入时边读边计算摘要，不把整个文件读进内存；先写临时文件，完成后再原子地移动到最终位置
+ * 相同内容只保存一份，引用计数见BlobContentService
+ */
+@Service
+public class FileBlobStore {
+    private static final long CHUNK = 64 * 1024;
+
+    private final Path root;
+    private final Path tmp;
+
+    public FileBlobStore(@Value("${fullforum.blob-store.root:blobs}") String root) {
+        this.root = Paths.get(root).toAbsolutePath();
+        this.tmp = this.root.resolve("tmp");
+    }
+
+    public static class StoredContent {
+        public final String contentHash;
+        public final long size;
+
+        StoredContent(String contentHash, long size) {
+            this.contentHash = contentHash;
+            this.size = size;
+        }
+    }
+
+    public StoredContent save(InputStream input) throws IOException {
+        Files.createDirectories(tmp);
+        var temp = Files.createTempFile(tmp, "upload", ".tmp");
+        try {
+            var digest = sha256();
+            long size = 0;
+            try (var source = Channels.newChannel(new DigestInputStream(input, digest));
+                 var target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long transferred;
+                while ((transferred = target.transferFrom(source, size, CHUNK)) > 0) {
+                    size += transferred;
+                }
+            }
+            var contentHash = toHex(digest.digest());
+            var path = pathOf(contentHash);
+            if (Files.exists(path)) {
+                try {
+                    // 相同内容已经存在，更新修改时间，避免被当作无人引用的文件清理掉
+                    Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+                    return new StoredContent(contentHash, size);
+                } catch (NoSuchFileException e) {
+                    // 刚好被清理，重新写入
+                }
+            }
+            Files.createDirectories(path.getParent());
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // 相同内容被并发写入，保留先完成的那个
+            }
+            return new StoredContent(contentHash, size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public boolean exists(String contentHash) {
+        return Files.exists(pathOf(contentHash));
+    }
+
+    public Path pathOf(String contentHash) {
+        if (contentHash.length() < 4 || !contentHash.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            throw new IllegalArgumentException("invalid content hash");
+        }
+        return root.resolve(contentHash.substring(0, 2))
+                .resolve(contentHash.substring(2, 4))
+                .resolve(contentHash);
+    }
+
+    /**
+     * 文件在before之后被写入或再次上传过时不删除，返回是否删除
+     */
+    public boolean deleteIfUnchangedSince(String contentHash, long before) throws IOException {
+        var path = pathOf(contentHash);
+        try {
+            if (Files.getLastModifiedTime(path).toMillis() >= before) {
+                return false;
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return Files.deleteIfExists(path);
+    }
+
+    /**
+     * 在before之前写入、之后没有再上传过的所有内容的hash，不包括临时文件
+     */
+    public List<String> listUnchangedSince(long before) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        try (var paths = Files.walk(root, 3)) {
+            return paths.filter(path -> !path.startsWith(tmp) && path.getNameCount() == root.getNameCount() + 3)
+                    .filter(path -> {
+                        try {
+                            return Files.isRegularFile(path) && Files.getLastModifiedTime(path).toMillis() < before;
+                        } catch (IOException e) {
+                            // 刚好被删除
+                            return false;
+                        }
+                    })
+                    .map(path -> path.getFileName().toString())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        var hex = new StringBuilder(bytes.length * 2);
+        for (var b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,232 @@
+package fullforum.services;
+
+import fullforum.dto.out.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 按指定的最大宽高生成缩小后的图片，只用JDK自带的ImageIO
+ * 生成在固定大小的线程池中进行，队列满或超时时由调用方返回原图；生成结果按总字节数做LRU缓存
+ */
+@Service
+public class ImageVariantService {
+    public static final int MAX_DIMENSION = 4096;
+
+    // 超过这个像素数的图片不处理，避免解码时占用过多内存
+    private static final long MAX_PIXELS = 40_000_000L;
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final Set<String> RESIZABLE = Set.of("image/png", "image/jpeg", "image/gif", "image/bmp");
+    private static final byte[] USE_ORIGINAL = new byte[0];
+
+    @Autowired
+    FileBlobStore blobStore;
+
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final ByteSizeLruCache<String> cache;
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inflight = new ConcurrentHashMap<>();
+
+    public ImageVariantService(@Value("${fullforum.image-variants.threads:2}") int threads,
+                               @Value("${fullforum.image-variants.queue-size:64}") int queueSize,
+                               @Value("${fullforum.image-variants.cache-bytes:67108864}") long cacheBytes,
+                               @Value("${fullforum.image-variants.timeout-ms:10000}") long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.cache = new ByteSizeLruCache<>(cacheBytes);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            var thread = new Thread(runnable, "image-variants");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static class Variant {
+        /**
+         * null表示应当返回原图
+         */
+        public final byte[] data;
+        public final String contentType;
+        /**
+         * 原图是否是确定的结果（图片本来就足够小、不是图片等），为false说明只是暂时处理不过来
+         */
+        public final boolean stable;
+
+        Variant(byte[] data, String contentType, boolean stable) {
+            this.data = data;
+            this.contentType = contentType;
+            this.stable = stable;
+        }
+    }
+
+    /**
+     * width、height为空时该方向不限制。只缩小，不放大
+     */
+    public Variant getVariant(String contentHash, String contentType, Integer width, Integer height) {
+        if (!RESIZABLE.contains(contentType) || (width == null && height == null)) {
+            return new Variant(null, contentType, true);
+        }
+        var maxWidth = width == null ? Integer.MAX_VALUE : width;
+        var maxHeight = height == null ? Integer.MAX_VALUE : height;
+        var outputType = outputTypeOf(contentType);
+        var key = contentHash + "/" + maxWidth + "x" + maxHeight;
+
+        var cached = cache.get(key);
+        if (cached != null) {
+            return new Variant(cached == USE_ORIGINAL ? null : cached, outputType, true);
+        }
+
+        var future = new CompletableFuture<byte[]>();
+        var existing = inflight.putIfAbsent(key, future);
+        if (existing != null) {
+            future = existing;
+        } else {
+            var path = blobStore.pathOf(contentHash);
+            var created = future;
+            try {
+                executor.execute(() -> {
+                    try {
+                        var data = generate(path, outputType, maxWidth, maxHeight);
+                        cache.put(key, data == null ? USE_ORIGINAL : data);
+                        created.complete(data);
+                    } catch (IOException e) {
+                        // 图片损坏或不完整，重试也一样，记住直接返回原图
+                        cache.put(key, USE_ORIGINAL);
+                        created.complete(null);
+                    } catch (Throwable e) {
+                        created.completeExceptionally(e);
+                    } finally {
+                        inflight.remove(key, created);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inflight.remove(key, created);
+                return new Variant(null, contentType, false);
+            }
+        }
+
+        try {
+            var data = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return new Variant(data, outputType, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Variant(null, contentType, false);
+        } catch (ExecutionException | TimeoutException e) {
+            return new Variant(null, contentType, false);
+        }
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(cache.hits(), cache.misses(), cache.size());
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 有透明通道的格式输出png，其他输出jpeg
+     */
+    static String outputTypeOf(String contentType) {
+        return contentType.equals("image/png") || contentType.equals("image/gif") ? "image/png" : "image/jpeg";
+    }
+
+    /**
+     * 不需要缩小或无法解码时返回null
+     */
+    static byte[] generate(Path path, String outputType, int maxWidth, int maxHeight) throws IOException {
+        BufferedImage source;
+        int width;
+        int height;
+        try (var input = ImageIO.createImageInputStream(path.toFile())) {
+            var readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            var reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+                if ((long) width * height > MAX_PIXELS) {
+                    return null;
+                }
+                var scale = Math.min((double) maxWidth / width, (double) maxHeight / height);
+                if (scale >= 1) {
+                    return null;
+                }
+                var param = reader.getDefaultReadParam();
+                // 缩小很多时先隔行隔列读取，减少解码的工作量，剩下的交给插值
+                var subsampling = (int) Math.floor(1 / scale / 2);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        var scale = Math.min((double) maxWidth / width, (double) maxHeight / height);
+        var targetWidth = Math.max(1, (int) Math.round(width * scale));
+        var targetHeight = Math.max(1, (int) Math.round(height * scale));
+        var png = outputType.equals("image/png");
+        var target = new BufferedImage(targetWidth, targetHeight,
+                png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        var graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (!png) {
+                // jpeg没有透明通道
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, targetWidth, targetHeight);
+            }
+            graphics.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        var output = new ByteArrayOutputStream();
+        if (png) {
+            ImageIO.write(target, "png", output);
+        } else {
+            var writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (var imageOutput = ImageIO.createImageOutputStream(output)) {
+                writer.setOutput(imageOutput);
+                var param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+                writer.write(null, new IIOImage(target, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,79 @@
+package fullforum.services;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单节点部署时使用，获取、续期和释放都是对ConcurrentHashMap的一次原子compute，不访问数据库
+ */
+@Service
+@ConditionalOnProperty(name = "fullforum.edit-lock.backend", havingValue = "local", matchIfMissing = true)
+public class LocalEditLockBackend implements EditLockBackend {
+
+    private final ConcurrentHashMap<Long, EditLease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public EditLease tryAcquire(long documentId, long userId, long now) {
+        return leases.compute(documentId, (id, current) -> {
+            if (current == null || current.isExpired(now)) {
+                return new EditLease(userId, now, now);
+            }
+            if (current.isOwnedBy(userId)) {
+                return current.renew(now);
+            }
+            return current;
+        });
+    }
+
+    @Override
+    public boolean isHeldLocally(long documentId, long userId, long now) {
+        var lease = leases.get(documentId);
+        return lease != null && lease.isOwnedBy(userId) && !lease.isExpired(now);
+    }
+
+    @Override
+    public Long getOwner(long documentId, long now) {
+        var lease = leases.get(documentId);
+        if (lease == null) {
+            return null;
+        }
+        if (lease.isExpired(now)) {
+            leases.remove(documentId, lease);
+            return null;
+        }
+        return lease.getOwnerId();
+    }
+
+    @Override
+    public boolean release(long documentId, long userId, long now) {
+        var released = new boolean[1];
+        leases.computeIfPresent(documentId, (id, current) -> {
+            if (current.isExpired(now)) {
+                return null;
+            }
+            if (!current.isOwnedBy(userId)) {
+                return current;
+            }
+            released[0] = true;
+            return null;
+        });
+        return released[0];
+    }
+
+    @Override
+    public void forget(long documentId) {
+        leases.remove(documentId);
+    }
+
+    @Override
+    public void clear() {
+        leases.clear();
+    }
+
+    @Override
+    public boolean isDurable() {
+        return false;
+    }
+}
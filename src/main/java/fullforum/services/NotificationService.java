@@ -0,0 +1,171 @@
+package fullforum.services;
+
+import fullforum.data.models.Message;
+import fullforum.data.models.NotificationOutbox;
+import fullforum.data.repos.NotificationOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 站内通知
+ * 业务操作只在自己的事务中写入一条NotificationOutbox，事务提交后由后台线程展开成Message并批量插入，
+ * 请求的耗时与接收者的数量无关。进程在发送前退出时，定时任务会把遗留的记录补发
+ */
+@Service
+public class NotificationService {
+    private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
+
+    public static final long SYSTEM_SENDER = -1L;
+
+    static final int FLUSH_SIZE = 200;
+
+    @Autowired
+    NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    Snowflake snowflake;
+
+    @Autowired
+    UnreadMessageCounter unreadCounter;
+
+    private final boolean dispatchEnabled;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "notification-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 已经有一次发送在排队时不再重复提交
+     */
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    public NotificationService(@Value("${fullforum.notifications.dispatch-enabled:true}") boolean dispatchEnabled,
+                               PlatformTransactionManager transactionManager) {
+        this.dispatchEnabled = dispatchEnabled;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 需要在业务操作的事务中调用，事务回滚时通知也不会发出
+     */
+    public void notify(long senderId, long receiverId, String title, String content, String link) {
+        notifyAll(senderId, List.of(receiverId), title, content, link);
+    }
+
+    public void notifyAll(long senderId, Collection<Long> receiverIds, String title, String content, String link) {
+        if (receiverIds.isEmpty()) {
+            return;
+        }
+        outboxRepository.save(new NotificationOutbox(snowflake.nextId(), senderId, receiverIds, title, content, link));
+        AfterCommit.run(this::wakeUp);
+    }
+
+    @Scheduled(fixedDelayString = "${fullforum.notifications.poll-interval-ms:30000}")
+    void scheduledDispatch() {
+        if (dispatchEnabled) {
+            dispatchPending();
+        }
+    }
+
+    /**
+     * 把outbox中的记录全部展开成Message，返回插入的Message数量
+     */
+    public int dispatchPending() {
+        int total = 0;
+        while (true) {
+            Integer inserted = transactionTemplate.execute(status -> dispatchBatch());
+            if (inserted == null || inserted < 0) {
+                return total;
+            }
+            total += inserted;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private void wakeUp() {
+        if (!dispatchEnabled || !wakeUpPending.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> {
+            wakeUpPending.set(false);
+            try {
+                dispatchPending();
+            } catch (RuntimeException e) {
+                // 留在outbox中，由定时任务重试
+                log.warn("failed to dispatch notifications", e);
+            }
+        });
+    }
+
+    /**
+     * outbox为空时返回-1
+     */
+    private int dispatchBatch() {
+        var events = outboxRepository.findTop100ByOrderByIdAsc();
+        if (events.isEmpty()) {
+            return -1;
+        }
+        int inserted = 0;
+        var unread = new HashMap<Long, Long>();
+        var unflushed = new ArrayList<Message>(FLUSH_SIZE);
+        for (var event : events) {
+            // 多个节点同时发送时，只有删除成功的一方插入Message
+            if (outboxRepository.claim(event.getId()) == 0) {
+                continue;
+            }
+            entityManager.detach(event);
+            for (var receiverId : event.getReceiverIds()) {
+                var message = new Message(snowflake.nextId(), event.getSenderId(), receiverId);
+                message.setTitle(event.getTitle());
+                message.setContent(event.getContent());
+                message.setLink(event.getLink());
+                entityManager.persist(message);
+                unflushed.add(message);
+                unread.merge(receiverId, 1L, Long::sum);
+                inserted++;
+                if (unflushed.size() >= FLUSH_SIZE) {
+                    flush(unflushed);
+                }
+            }
+        }
+        flush(unflushed);
+        unreadCounter.adjustAll(unread);
+        return inserted;
+    }
+
+    /**
+     * 写入后从持久化上下文中移除，接收者很多时不会在内存中堆积
+     */
+    private void flush(List<Message> messages) {
+        entityManager.flush();
+        for (var message : messages) {
+            entityManager.detach(message);
+        }
+        messages.clear();
+    }
+}
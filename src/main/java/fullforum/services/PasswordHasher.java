@@ -0,0 +1,134 @@
+package fullforum.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * 密码的加盐哈希，格式为 pbkdf2$迭代次数$salt$hash
+ * 没有这个前缀的是旧数据中的明文密码，登录成功后由调用方换成哈希。
+ * 验证成功的(密码, 哈希)组合会缓存一段时间，旧客户端每个请求都带密码时不必每次都计算一遍
+ */
+@Service
+public class PasswordHasher {
+    static final String PREFIX = "pbkdf2";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * 键是 SHA-256(哈希 + 密码)，不在内存中保留明文；修改密码后哈希变化，旧的项自然失效
+     */
+    private final TimedLruCache<String, Boolean> verified;
+
+    public PasswordHasher(@Value("${fullforum.password.iterations:120000}") int iterations,
+                          @Value("${fullforum.password.verified-cache-size:10000}") int cacheSize,
+                          @Value("${fullforum.password.verified-cache-ttl-ms:600000}") long cacheTtlMillis) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("iterations should be positive");
+        }
+        this.iterations = iterations;
+        this.verified = new TimedLruCache<>(cacheSize, cacheTtlMillis);
+    }
+
+    public String hash(String password) {
+        var salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        var encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + "$" + iterations + "$" + encoder.encodeToString(salt) + "$"
+                + encoder.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    public boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        var cacheKey = cacheKey(password, stored);
+        if (verified.get(cacheKey) != null) {
+            return true;
+        }
+
+        boolean ok;
+        if (isHash(stored)) {
+            ok = verifyHash(password, stored);
+        } else {
+            // 旧数据中的明文
+            ok = MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8),
+                    password.getBytes(StandardCharsets.UTF_8));
+        }
+        if (ok) {
+            verified.put(cacheKey, Boolean.TRUE);
+        }
+        return ok;
+    }
+
+    /**
+     * 明文或迭代次数低于当前设置时需要重新哈希
+     */
+    public boolean needsRehash(String stored) {
+        return !isHash(stored) || Integer.parseInt(stored.split("\\$")[1]) < iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * 旧数据中的明文也可能恰好是 pbkdf2$x$y$z 的形式，各部分都能解析时才当作哈希
+     */
+    private static boolean isHash(String stored) {
+        var parts = stored.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(PREFIX)) {
+            return false;
+        }
+        try {
+            var decoder = Base64.getDecoder();
+            return Integer.parseInt(parts[1]) > 0 && decoder.decode(parts[2]).length > 0
+                    && decoder.decode(parts[3]).length > 0;
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException也是IllegalArgumentException
+            return false;
+        }
+    }
+
+    private static boolean verifyHash(String password, String stored) {
+        var parts = stored.split("\\$");
+        var decoder = Base64.getDecoder();
+        var expected = decoder.decode(parts[3]);
+        var actual = pbkdf2(password, decoder.decode(parts[2]), Integer.parseInt(parts[1]));
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        var spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static String cacheKey(String password, String stored) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(stored.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(password.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package fullforum.services;
+
+import fullforum.data.models.TargetType;
+import fullforum.data.models.Thumb;
+import fullforum.data.repos.TeamRepository;
+import fullforum.data.repos.ThumbRepository;
+import fullforum.data.repos.UserRepository;
+import fullforum.dto.out.QTeam;
+import fullforum.dto.out.Quser;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 组装列表结果时批量查出作者、团队和当前用户的点赞，每种实体只查一次数据库
+ * 找不到的id在结果中没有对应项，get时得到null
+ */
+@Service
+public class ProfileResolver {
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    ThumbRepository thumbRepository;
+
+    public <T> Map<Long, Quser> resolveUsers(Collection<T> rows, Function<T, Long> userIdOf) {
+        var ids = collectIds(rows, userIdOf);
+        var users = new HashMap<Long, Quser>(ids.size() * 2);
+        if (ids.isEmpty()) {
+            return users;
+        }
+        for (var user : userRepository.findAllById(ids)) {
+            users.put(user.getId(), Quser.convert(user));
+        }
+        return users;
+    }
+
+    public <T> Map<Long, QTeam> resolveTeams(Collection<T> rows, Function<T, Long> teamIdOf) {
+        var ids = collectIds(rows, teamIdOf);
+        var teams = new HashMap<Long, QTeam>(ids.size() * 2);
+        if (ids.isEmpty()) {
+            return teams;
+        }
+        for (var team : teamRepository.findAllById(ids)) {
+            teams.put(team.getId(), QTeam.convert(team));
+        }
+        return teams;
+    }
+
+    /**
+     * viewerId对这些评论/回复的点赞，key为被点赞对象的id
+     */
+    public <T> Map<Long, Thumb> resolveThumbs(long viewerId, TargetType type,
+                                              Collection<T> rows, Function<T, Long> targetIdOf) {
+        var ids = collectIds(rows, targetIdOf);
+        var thumbs = new HashMap<Long, Thumb>();
+        if (ids.isEmpty()) {
+            return thumbs;
+        }
+        for (var thumb : thumbRepository.findAllByUserIdAndTypeAndTargetIdIn(viewerId, type, ids)) {
+            thumbs.put(thumb.getTargetId(), thumb);
+        }
+        return thumbs;
+    }
+
+    private static <T> Collection<Long> collectIds(Collection<T> rows, Function<T, Long> idOf) {
+        var ids = new HashSet<Long>();
+        for (var row : rows) {
+            var id = idOf.apply(row);
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,176 @@
+package fullforum.services;
+
+import fullforum.data.models.SessionToken;
+import fullforum.data.repos.SessionTokenRepository;
+import fullforum.dto.out.AuthStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录token到用户id的映射
+ * 解析结果缓存在内存中，缓存未命中时查SessionToken表，因此重启后token仍然有效。
+ * 注销会立即清掉本节点的缓存，其他节点最迟在缓存的ttl之后生效
+ */
+@Service
+public class SessionStore {
+
+    @Autowired
+    SessionTokenRepository sessionTokenRepository;
+
+    @Autowired
+    Snowflake snowflake;
+
+    private final long sessionTtlMillis;
+    private final TimedLruCache<String, Session> cache;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+    private final SecureRandom random = new SecureRandom();
+
+    private final LongAdder tokenRequests = new LongAdder();
+    private final LongAdder legacyRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    public SessionStore(@Value("${fullforum.session.ttl-ms:15552000000}") long sessionTtlMillis,
+                        @Value("${fullforum.session.cache-size:10000}") int cacheSize,
+                        @Value("${fullforum.session.cache-ttl-ms:300000}") long cacheTtlMillis,
+                        PlatformTransactionManager transactionManager) {
+        this.sessionTtlMillis = sessionTtlMillis;
+        this.cache = new TimedLruCache<>(cacheSize, cacheTtlMillis);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * 为用户创建新的会话，返回给客户端的token只在这里出现一次
+     */
+    public String issue(long userId) {
+        return issue(userId, transactionTemplate);
+    }
+
+    /**
+     * 在独立的事务中创建会话，返回时token已经提交，不受调用方事务回滚的影响
+     */
+    public String issueCommitted(long userId) {
+        return issue(userId, newTransactionTemplate);
+    }
+
+    private String issue(long userId, TransactionTemplate template) {
+        var bytes = new byte[32];
+        random.nextBytes(bytes);
+        var token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        var tokenHash = hash(token);
+        var expiresAt = System.currentTimeMillis() + sessionTtlMillis;
+
+        template.execute(status -> {
+            sessionTokenRepository.save(new SessionToken(snowflake.nextId(), tokenHash, userId, expiresAt));
+            AfterCommit.run(() -> cache.put(tokenHash, new Session(userId, expiresAt)));
+            return null;
+        });
+        return token;
+    }
+
+    /**
+     * token无效或已过期时返回null
+     */
+    public Long resolve(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        var tokenHash = hash(token);
+        var now = System.currentTimeMillis();
+        var session = cache.get(tokenHash);
+        if (session == null) {
+            var stored = sessionTokenRepository.findByTokenHash(tokenHash);
+            if (stored == null) {
+                return null;
+            }
+            session = new Session(stored.getUserId(), stored.getExpiresAt());
+            cache.put(tokenHash, session);
+        }
+        if (now >= session.expiresAt) {
+            cache.remove(tokenHash);
+            return null;
+        }
+        return session.userId;
+    }
+
+    public void revoke(String token) {
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        var tokenHash = hash(token);
+        transactionTemplate.execute(status -> sessionTokenRepository.deleteByTokenHash(tokenHash));
+        cache.remove(tokenHash);
+    }
+
+    /**
+     * 删除用户的所有会话（如修改密码后），在调用方的事务中执行
+     * 本节点的缓存立即清掉一次；提交前其他请求可能又从数据库读到旧行，提交后再清一次
+     */
+    public void revokeAll(long userId) {
+        transactionTemplate.execute(status -> sessionTokenRepository.deleteByUserId(userId));
+        cache.removeValuesIf(session -> session.userId == userId);
+        AfterCommit.run(() -> cache.removeValuesIf(session -> session.userId == userId));
+    }
+
+    @Scheduled(fixedDelayString = "${fullforum.session.cleanup-interval-ms:3600000}")
+    void removeExpired() {
+        transactionTemplate.execute(status -> sessionTokenRepository.deleteExpired(System.currentTimeMillis()));
+    }
+
+    public void recordTokenRequest() {
+        tokenRequests.increment();
+    }
+
+    public void recordLegacyRequest() {
+        legacyRequests.increment();
+    }
+
+    public void recordRejectedRequest() {
+        rejectedRequests.increment();
+    }
+
+    public AuthStats stats() {
+        return new AuthStats(tokenRequests.sum(), legacyRequests.sum(), rejectedRequests.sum(), cache.size());
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    static String hash(String token) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            var hex = new StringBuilder(digest.length * 2);
+            for (var b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Session {
+        final long userId;
+        final long expiresAt;
+
+        Session(long userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package fullforum.services;
+
+import fullforum.data.models.TargetType;
+import fullforum.data.repos.CommentRepository;
+import fullforum.data.repos.ReplyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 评论和回复的点赞数
+ * 平时在点赞的事务中直接用一条update原子地加减；同一对象在一个周期内被点赞超过hotThreshold次后，
+ * 后续的增量在内存中按对象合并，定时一次写入，避免热门评论的行锁成为瓶颈。热门对象的点赞数最多落后一个写入周期
+ */
+@Service
+public class ThumbCountAggregator {
+    private static final Logger log = LoggerFactory.getLogger(ThumbCountAggregator.class);
+
+    @Autowired
+    CommentRepository commentRepository;
+
+    @Autowired
+    ReplyRepository replyRepository;
+
+    private final boolean coalesceEnabled;
+    private final int hotThreshold;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 本周期内每个对象的点赞次数，每次写入后清空
+     */
+    private final ConcurrentHashMap<Target, Integer> recentHits = new ConcurrentHashMap<>();
+
+    /**
+     * 已提交、还没有写入数据库的增量。ConcurrentHashMap按桶加锁，不同对象之间互不阻塞
+     */
+    private final ConcurrentHashMap<Target, Long> pending = new ConcurrentHashMap<>();
+
+    public ThumbCountAggregator(@Value("${fullforum.thumb-counter.coalesce-enabled:true}") boolean coalesceEnabled,
+                                @Value("${fullforum.thumb-counter.hot-threshold:20}") int hotThreshold,
+                                PlatformTransactionManager transactionManager) {
+        this.coalesceEnabled = coalesceEnabled;
+        this.hotThreshold = hotThreshold;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 在点赞/取消点赞的事务中调用
+     */
+    public void add(TargetType type, long targetId, int delta) {
+        var target = new Target(type, targetId);
+        if (coalesceEnabled && recentHits.merge(target, 1, Integer::sum) > hotThreshold) {
+            AfterCommit.run(() -> pending.merge(target, (long) delta, Long::sum));
+            return;
+        }
+        write(target, delta);
+    }
+
+    @Scheduled(fixedDelayString = "${fullforum.thumb-counter.flush-interval-ms:1000}")
+    void scheduledFlush() {
+        if (coalesceEnabled) {
+            flush();
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        if (coalesceEnabled) {
+            flush();
+        }
+    }
+
+    /**
+     * 把合并后的增量写入数据库，返回写入的对象数
+     */
+    public int flush() {
+        recentHits.clear();
+        int flushed = 0;
+        for (var target : new ArrayList<>(pending.keySet())) {
+            // 取出后其他线程的增量会放进新的项，不会丢失
+            var delta = pending.remove(target);
+            if (delta == null || delta == 0) {
+                continue;
+            }
+            try {
+                transactionTemplate.execute(status -> {
+                    write(target, delta);
+                    return null;
+                });
+                flushed++;
+            } catch (RuntimeException e) {
+                log.warn("failed to flush thumb count of {} {}", target.type, target.id, e);
+                pending.merge(target, delta, Long::sum);
+            }
+        }
+        return flushed;
+    }
+
+    private void write(Target target, long delta) {
+        if (target.type == TargetType.Reply) {
+            replyRepository.addThumbCount(target.id, (int) delta);
+        } else {
+            commentRepository.addThumbCount(target.id, delta);
+        }
+    }
+
+    private static class Target {
+        final TargetType type;
+        final long id;
+
+        Target(TargetType type, long id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            var target = (Target) o;
+            return id == target.id && type == target.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, id);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package fullforum.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 有容量上限、带过期时间的LRU缓存
+ * 超过容量时淘汰最久未访问的项；超过ttl的项在读取时视为不存在
+ */
+public class TimedLruCache<K, V> {
+    private final long ttlMillis;
+
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TimedLruCache(int maxSize, long ttlMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize should be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return 缓存的值，不存在或已过期则返回null
+     */
+    public synchronized V get(K key) {
+        var entry = map.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (System.currentTimeMillis() > entry.expiresAt) {
+            map.remove(key);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * 已有未过期的值时不覆盖，返回它；否则放入value并返回null
+     */
+    public synchronized V putIfAbsent(K key, V value) {
+        var entry = map.get(key);
+        if (entry != null && System.currentTimeMillis() <= entry.expiresAt) {
+            return entry.value;
+        }
+        map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+        return null;
+    }
+
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void removeIf(Predicate<K> predicate) {
+        map.keySet().removeIf(predicate);
+    }
+
+    public synchronized void removeValuesIf(Predicate<V> predicate) {
+        map.values().removeIf(entry -> predicate.test(entry.value));
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package fullforum.services;
+
+import fullforum.data.repos.MessageRepository;
+import fullforum.dto.out.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个用户的未读消息数
+ * 第一次读取时从数据库统计，之后随消息的插入、已读和删除增量修改；
+ * 缓存项过期后重新统计，增量遗漏（如其他节点的修改）造成的偏差最多保留一个ttl
+ */
+@Service
+public class UnreadMessageCounter {
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    private final TimedLruCache<Long, AtomicLong> counters;
+    private final ConcurrentHashMap<Long, Load> loading = new ConcurrentHashMap<>();
+
+    public UnreadMessageCounter(@Value("${fullforum.unread-counter.max-size:100000}") int maxSize,
+                                @Value("${fullforum.unread-counter.ttl-ms:600000}") long ttlMillis) {
+        this.counters = new TimedLruCache<>(maxSize, ttlMillis);
+    }
+
+    public long get(long userId) {
+        var counter = counters.get(userId);
+        if (counter != null) {
+            return counter.get();
+        }
+        beginLoad(userId);
+        Long count = null;
+        try {
+            count = messageRepository.countByReceiverIdAndHaveRead(userId, false);
+            return count;
+        } finally {
+            endLoad(userId, count);
+        }
+    }
+
+    /**
+     * 在修改消息的事务中调用，提交后才生效；没有缓存的用户下次读取时会重新统计
+     */
+    public void adjust(long userId, long delta) {
+        if (delta != 0) {
+            AfterCommit.run(() -> apply(userId, delta));
+        }
+    }
+
+    public void adjustAll(Map<Long, Long> deltas) {
+        if (!deltas.isEmpty()) {
+            AfterCommit.run(() -> deltas.forEach(this::apply));
+        }
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(counters.hits(), counters.misses(), counters.size());
+    }
+
+    public void clear() {
+        counters.clear();
+    }
+
+    void apply(long userId, long delta) {
+        loading.compute(userId, (id, load) -> {
+            var counter = counters.get(id);
+            if (counter != null) {
+                counter.accumulateAndGet(delta, (count, d) -> Math.max(0, count + d));
+            } else if (load != null) {
+                load.changed = true;
+            }
+            return load;
+        });
+    }
+
+    void beginLoad(long userId) {
+        loading.compute(userId, (id, load) -> {
+            if (load == null) {
+                load = new Load();
+            }
+            load.loaders++;
+            return load;
+        });
+    }
+
+    /**
+     * 统计期间有增量到达时无法判断统计结果是否已经包含它，这次不缓存，下次读取时重新统计
+     */
+    void endLoad(long userId, Long count) {
+        loading.compute(userId, (id, load) -> {
+            if (count != null && !load.changed) {
+                counters.putIfAbsent(id, new AtomicLong(count));
+            }
+            return --load.loaders == 0 ? null : load;
+        });
+    }
+
+    /**
+     * 正在从数据库统计的用户，与apply在同一个锁下修改
+     */
+    private static class Load {
+        int loaders;
+        boolean changed;
+    }
+}
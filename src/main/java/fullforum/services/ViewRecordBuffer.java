@@ -0,0 +1,184 @@
+package fullforum.services;
+
+import fullforum.data.models.ViewRecord;
+import fullforum.data.repos.ViewRecordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 浏览记录的写缓冲
+ * 读文档时只在内存中记下(userId, documentId)最近一次浏览的时间，定时和关闭时批量写入ViewRecord表
+ */
+@Service
+public class ViewRecordBuffer {
+    private static final Logger log = LoggerFactory.getLogger(ViewRecordBuffer.class);
+
+    static final int BATCH_SIZE = 200;
+
+    @Autowired
+    ViewRecordRepository viewRecordRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    Snowflake snowflake;
+
+    private final boolean flushEnabled;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * userId -> (documentId -> 浏览时间)，内层的map只在外层compute中读写
+     */
+    private final ConcurrentHashMap<Long, Map<Long, Long>> pending = new ConcurrentHashMap<>();
+
+    public ViewRecordBuffer(@Value("${fullforum.view-record.flush-enabled:true}") boolean flushEnabled,
+                            PlatformTransactionManager transactionManager) {
+        this.flushEnabled = flushEnabled;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void record(long userId, long documentId) {
+        record(userId, documentId, System.currentTimeMillis());
+    }
+
+    void record(long userId, long documentId, long viewedAt) {
+        pending.compute(userId, (id, views) -> {
+            if (views == null) {
+                views = new HashMap<>();
+            }
+            views.merge(documentId, viewedAt, Math::max);
+            return views;
+        });
+    }
+
+    /**
+     * 该用户还没有写入数据库的浏览记录，documentId -> 浏览时间
+     */
+    public Map<Long, Long> pendingFor(long userId) {
+        var result = new HashMap<Long, Long>();
+        pending.computeIfPresent(userId, (id, views) -> {
+            result.putAll(views);
+            return views;
+        });
+        return result;
+    }
+
+    /**
+     * 文档删除后不再写入它的浏览记录
+     */
+    public void forgetDocument(long documentId) {
+        for (var userId : pending.keySet()) {
+            pending.computeIfPresent(userId, (id, views) -> {
+                views.remove(documentId);
+                return views.isEmpty() ? null : views;
+            });
+        }
+    }
+
+    public int pendingCount() {
+        int count = 0;
+        for (var userId : pending.keySet()) {
+            count += pendingFor(userId).size();
+        }
+        return count;
+    }
+
+    public void clear() {
+        pending.clear();
+    }
+
+    @Scheduled(fixedDelayString = "${fullforum.view-record.flush-interval-ms:5000}")
+    void scheduledFlush() {
+        if (flushEnabled) {
+            flush();
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        if (flushEnabled) {
+            flush();
+        }
+    }
+
+    /**
+     * 取出当前缓冲的全部记录并写入数据库，返回写入的条数
+     * 写入失败的记录放回缓冲，下次再试
+     */
+    public int flush() {
+        var drained = new ArrayList<ViewKey>();
+        for (var userId : new ArrayList<>(pending.keySet())) {
+            var views = pending.remove(userId);
+            if (views != null) {
+                views.forEach((documentId, viewedAt) -> drained.add(new ViewKey(userId, documentId, viewedAt)));
+            }
+        }
+
+        int written = 0;
+        for (int from = 0; from < drained.size(); from += BATCH_SIZE) {
+            var batch = drained.subList(from, Math.min(from + BATCH_SIZE, drained.size()));
+            try {
+                transactionTemplate.execute(status -> {
+                    writeBatch(batch);
+                    return null;
+                });
+                written += batch.size();
+            } catch (RuntimeException e) {
+                log.warn("failed to flush {} view records, will retry", batch.size(), e);
+                batch.forEach(key -> record(key.userId, key.documentId, key.viewedAt));
+            }
+        }
+        return written;
+    }
+
+    private void writeBatch(List<ViewKey> batch) {
+        var userIds = new HashSet<Long>();
+        var documentIds = new HashSet<Long>();
+        for (var key : batch) {
+            userIds.add(key.userId);
+            documentIds.add(key.documentId);
+        }
+        // 用户集合与文档集合的笛卡尔积是batch的超集，按(userId, documentId)再筛一次
+        var existing = new HashMap<List<Long>, List<ViewRecord>>();
+        for (var record : viewRecordRepository.findByUserIdInAndDocumentIdIn(userIds, documentIds)) {
+            existing.computeIfAbsent(List.of(record.getUserId(), record.getDocumentId()), k -> new ArrayList<>())
+                    .add(record);
+        }
+        for (var key : batch) {
+            var records = existing.get(List.of(key.userId, key.documentId));
+            if (records == null) {
+                entityManager.persist(new ViewRecord(snowflake.nextId(), key.userId, key.documentId, key.viewedAt));
+            } else {
+                records.forEach(record -> record.viewedAt(key.viewedAt));
+            }
+        }
+    }
+
+    private static class ViewKey {
+        final long userId;
+        final long documentId;
+        final long viewedAt;
+
+        ViewKey(long userId, long documentId, long viewedAt) {
+            this.userId = userId;
+            this.documentId = documentId;
+            this.viewedAt = viewedAt;
+        }
+    }
+}
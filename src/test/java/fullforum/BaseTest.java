@@ -1,5 +1,12 @@
 package fullforum;
 
+import fullforum.services.DocumentPermissionService;
+import fullforum.services.EditLockManager;
+import fullforum.services.SessionStore;
+import fullforum.services.UnreadMessageCounter;
+import fullforum.services.ViewRecordBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.Rollback;
@@ -15,4 +22,31 @@ import javax.transaction.Transactional;
 @ContextConfiguration(classes = TestServiceConfiguration.class)
 @AutoConfigureMockMvc
 public class BaseTest {
+
+    @Autowired
+    DocumentPermissionService permissionService;
+
+    @Autowired
+    EditLockManager editLockManager;
+
+    @Autowired
+    ViewRecordBuffer viewRecordBuffer;
+
+    @Autowired
+    SessionStore sessionStore;
+
+    @Autowired
+    UnreadMessageCounter unreadMessageCounter;
+
+    /**
+     * 各个测试之间数据库会回滚，内存中的缓存也要一起清掉
+     */
+    @BeforeEach
+    void resetInMemoryState() {
+        permissionService.invalidateAll();
+        editLockManager.clear();
+        viewRecordBuffer.clear();
+        sessionStore.clear();
+        unreadMessageCounter.clear();
+    }
 }
@@ -0,0 +1,95 @@
+package fullforum.bench;
+
+import fullforum.data.models.Comment;
+import fullforum.data.models.Document;
+import fullforum.data.models.User;
+import fullforum.dto.out.QComment;
+import fullforum.dto.out.QDocument;
+import fullforum.dto.out.Quser;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较手写convert与ModelMapper在1000个实体的列表上的开销
+ * 运行方式：mvn test-compile 后以test classpath运行本类的main方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DtoConvertBenchmark {
+
+    @Param("1000")
+    int size;
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private List<Document> documents;
+    private List<Comment> comments;
+    private Quser author;
+
+    @Setup
+    public void setup() {
+        documents = new ArrayList<>(size);
+        comments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            var document = new Document(i, i % 10, "title" + i, "description" + i, "data" + i);
+            document.setTeamId((long) (i % 7));
+            documents.add(document);
+            comments.add(new Comment(i, i % 10, i % 10, "content" + i));
+        }
+        author = Quser.convert(new User(1, "author", "123456", "", ""));
+    }
+
+    @Benchmark
+    public List<QDocument> documents_handwritten() {
+        var result = new ArrayList<QDocument>(documents.size());
+        for (var document : documents) {
+            result.add(QDocument.convert(document));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<QDocument> documents_modelmapper() {
+        var result = new ArrayList<QDocument>(documents.size());
+        for (var document : documents) {
+            result.add(modelMapper.map(document, QDocument.class));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<QComment> comments_handwritten() {
+        var result = new ArrayList<QComment>(comments.size());
+        for (var comment : comments) {
+            result.add(QComment.convert(comment, author, null));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<QComment> comments_modelmapper() {
+        var result = new ArrayList<QComment>(comments.size());
+        for (var comment : comments) {
+            var qComment = modelMapper.map(comment, QComment.class);
+            qComment.setUser(author);
+            result.add(qComment);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DtoConvertBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,59 @@
+package fullforum.bench;
+
+import fullforum.services.PasswordHasher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同迭代次数下登录时验证一次密码的耗时，以及命中验证缓存时的耗时
+ * 运行方式：mvn test-compile 后以test classpath运行本类的main方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PasswordHashBenchmark {
+
+    @Param({"10000", "60000", "120000", "310000"})
+    int iterations;
+
+    private PasswordHasher hasher;
+    private PasswordHasher uncached;
+    private String stored;
+
+    @Setup
+    public void setup() {
+        hasher = new PasswordHasher(iterations, 1000, 600000);
+        // ttl为负数，缓存总是过期，每次都重新计算
+        uncached = new PasswordHasher(iterations, 1, -1);
+        stored = hasher.hash("sd122daas");
+        hasher.verify("sd122daas", stored);
+    }
+
+    @Benchmark
+    public boolean login_verify() {
+        return uncached.verify("sd122daas", stored);
+    }
+
+    @Benchmark
+    public String hash_new_password() {
+        return hasher.hash("sd122daas");
+    }
+
+    @Benchmark
+    public boolean cached_verify() {
+        return hasher.verify("sd122daas", stored);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PasswordHashBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,49 @@
+package fullforum.controllers;
+
+import fullforum.BaseTest;
+import fullforum.data.models.User;
+import fullforum.data.repos.UserRepository;
+import fullforum.dto.in.LoginModel;
+import fullforum.errhand.BadRequestException;
+import fullforum.services.Auth;
+import fullforum.services.PasswordHasher;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 直接调用AccessController，登录不依赖FakeAuth
+ */
+public class AccessControllerLoginTest extends BaseTest {
+
+    @Autowired
+    AccessController accessController;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    PasswordHasher passwordHasher;
+
+    @Test
+    void login_migrate_plaintext_password_and_issue_token() {
+        userRepository.save(new User(1, "aaa", "sd122daas", "", ""));
+
+        var response = new MockHttpServletResponse();
+        accessController.login(new LoginModel("aaa", "sd122daas"), response);
+
+        var user = userRepository.findById(1L).orElseThrow();
+        assertTrue(user.getPassword().startsWith("pbkdf2$"));
+        assertFalse(passwordHasher.needsRehash(user.getPassword()));
+        assertTrue(user.checkPassword("sd122daas", passwordHasher));
+        assertNotNull(response.getCookie(Auth.TOKEN_COOKIE).getValue());
+        assertNull(response.getCookie("password").getValue());
+
+        // 迁移之后仍然可以用原密码登录
+        accessController.login(new LoginModel("aaa", "sd122daas"), new MockHttpServletResponse());
+        assertThrows(BadRequestException.class, () ->
+                accessController.login(new LoginModel("aaa", "wrong-pass"), new MockHttpServletResponse()));
+    }
+}
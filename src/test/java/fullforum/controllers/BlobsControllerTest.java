@@ -0,0 +1,275 @@
+package fullforum.controllers;
+
+import fullforum.BaseTest;
+import fullforum.data.models.Blob2;
+import fullforum.data.repos.BlobContentRepository;
+import fullforum.data.repos.BlobRepository;
+import fullforum.errhand.BadRequestException;
+import fullforum.errhand.ErrorCode;
+import fullforum.errhand.NotFoundException;
+import fullforum.services.BlobContentService;
+import fullforum.services.FileBlobStore;
+import fullforum.services.ImageVariantService;
+import fullforum.services.Snowflake;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+public class BlobsControllerTest extends BaseTest {
+
+    @Autowired
+    BlobsController blobsController;
+
+    @Autowired
+    BlobRepository blobRepository;
+
+    @Autowired
+    FileBlobStore blobStore;
+
+    @Autowired
+    BlobContentRepository blobContentRepository;
+
+    @Autowired
+    BlobContentService blobContentService;
+
+    @Autowired
+    ImageVariantService imageVariantService;
+
+    @Autowired
+    Snowflake snowflake;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    private static long idOf(String url) {
+        return Long.parseLong(url.substring(url.lastIndexOf('/') + 1));
+    }
+
+    private static byte[] png(String text) {
+        var body = text.getBytes();
+        var content = new byte[PNG_MAGIC.length + body.length];
+        System.arraycopy(PNG_MAGIC, 0, content, 0, PNG_MAGIC.length);
+        System.arraycopy(body, 0, content, PNG_MAGIC.length, body.length);
+        return content;
+    }
+
+    private static final byte[] PNG_MAGIC = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+
+    @Test
+    void uploadFile_store_content_on_disk_and_metadata_in_db() throws Exception {
+        var content = png("hello blob");
+        // 声明的类型与内容不符时以内容为准
+        var url = blobsController.uploadFile(new MockMultipartFile("file", "a.jpg", "image/jpeg", content));
+
+        var blob = blobRepository.findById(idOf(url)).orElseThrow();
+        assertEquals(content.length, blob.getSize());
+        assertEquals("image/png", blob.getContentType());
+        assertEquals(64, blob.getContentHash().length());
+        assertArrayEquals(content, Files.readAllBytes(blobStore.pathOf(blob.getContentHash())));
+
+        var response = blobsController.getFile(blob.getId(), null, null, null);
+        assertEquals("image/png", response.getHeaders().getContentType().toString());
+        assertEquals(content.length, response.getHeaders().getContentLength());
+        try (var input = response.getBody().getInputStream()) {
+            assertArrayEquals(content, input.readAllBytes());
+        }
+    }
+
+    @Test
+    void uploadFile_store_unknown_content_as_octet_stream() throws Exception {
+        var url = blobsController.uploadFile(new MockMultipartFile("file", "a.html", "text/html", "<html>".getBytes()));
+        assertEquals("application/octet-stream", blobRepository.findById(idOf(url)).orElseThrow().getContentType());
+    }
+
+    @Test
+    void getFile_return_immutable_etag_and_304_when_matched() throws Exception {
+        var url = blobsController.uploadFile(new MockMultipartFile("file", "a.png", "image/png", png("etag")));
+        var hash = blobRepository.findById(idOf(url)).orElseThrow().getContentHash();
+
+        mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + hash + "\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"));
+
+        mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/\"" + hash + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void getFile_return_206_for_range_request() throws Exception {
+        var content = png("0123456789");
+        var url = blobsController.uploadFile(new MockMultipartFile("file", "a.png", "image/png", content));
+
+        mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=8-11"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 8-11/" + content.length))
+                .andExpect(content().bytes("0123".getBytes()));
+    }
+
+    @Test
+    void uploadFile_store_identical_content_once() throws Exception {
+        var content = png(UUID.randomUUID().toString());
+        var url1 = blobsController.uploadFile(new MockMultipartFile("file", "a.png", "image/png", content));
+        var url2 = blobsController.uploadFile(new MockMultipartFile("file", "b.png", "image/png", content));
+
+        assertNotEquals(url1, url2);
+        var blob1 = blobRepository.findById(idOf(url1)).orElseThrow();
+        var blob2 = blobRepository.findById(idOf(url2)).orElseThrow();
+        assertEquals(blob1.getContentHash(), blob2.getContentHash());
+        assertEquals(2, blobContentRepository.findByContentHash(blob1.getContentHash()).getRefCount());
+        assertEquals(HttpStatus.OK, blobsController.getFile(blob2.getId(), null, null, null).getStatusCode());
+    }
+
+    @Test
+    void reconcile_count_references_of_existing_blobs() {
+        var hash = UUID.randomUUID().toString().replace("-", "") + "00000000000000000000000000000000";
+        var before = blobContentService.stats();
+        blobRepository.save(new Blob2(snowflake.nextId(), 10, "image/png", hash));
+        blobRepository.save(new Blob2(snowflake.nextId(), 10, "image/png", hash));
+
+        var stats = blobContentService.reconcile();
+
+        assertEquals(2, blobContentRepository.findByContentHash(hash).getRefCount());
+        assertEquals(before.getBlobs() + 2, stats.getBlobs());
+        assertEquals(before.getSavedBytes() + 10, stats.getSavedBytes());
+    }
+
+    @Test
+    void reconcile_remove_old_files_without_content_row() throws Exception {
+        var stale = blobStore.save(new ByteArrayInputStream(png(UUID.randomUUID().toString())));
+        var referenced = idOf(blobsController.uploadFile(
+                new MockMultipartFile("file", "a.png", "image/png", png(UUID.randomUUID().toString()))));
+        var referencedHash = blobRepository.findById(referenced).orElseThrow().getContentHash();
+        // 上传请求回滚后只剩下文件，超过宽限期
+        var old = FileTime.fromMillis(System.currentTimeMillis() - 2 * 3600_000L);
+        Files.setLastModifiedTime(blobStore.pathOf(stale.contentHash), old);
+        Files.setLastModifiedTime(blobStore.pathOf(referencedHash), old);
+
+        blobContentService.reconcile();
+
+        assertFalse(blobStore.exists(stale.contentHash));
+        assertTrue(blobStore.exists(referencedHash));
+    }
+
+    private static byte[] pngImage(int width, int height) throws Exception {
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, UUID.randomUUID().hashCode() & 0xFFFFFF);
+        var output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    @Test
+    void getFile_return_resized_variant_when_width_given() throws Exception {
+        var url = blobsController.uploadFile(new MockMultipartFile("file", "a.png", "image/png", pngImage(100, 50)));
+        var id = idOf(url);
+
+        var response = blobsController.getFile(id, 20, null, null);
+        assertEquals("image/png", response.getHeaders().getContentType().toString());
+        assertTrue(response.getHeaders().getETag().endsWith("-20xnull\""));
+        BufferedImage variant;
+        try (var input = response.getBody().getInputStream()) {
+            variant = ImageIO.read(input);
+        }
+        assertEquals(20, variant.getWidth());
+        assertEquals(10, variant.getHeight());
+
+        // 不放大：原图比要求的尺寸小时返回原图
+        var original = blobsController.getFile(id, 200, 200, null);
+        assertEquals(blobRepository.findById(id).orElseThrow().getSize(), original.getHeaders().getContentLength());
+    }
+
+    @Test
+    void getFile_return_original_and_remember_it_when_image_is_corrupt() throws Exception {
+        var url = blobsController.uploadFile(new MockMultipartFile("file", "a.png", "image/png", png("truncated")));
+        var id = idOf(url);
+        var size = blobRepository.findById(id).orElseThrow().getSize();
+
+        var response = blobsController.getFile(id, 20, null, null);
+        assertEquals(size, response.getHeaders().getContentLength());
+        var before = imageVariantService.stats();
+        response = blobsController.getFile(id, 20, null, null);
+        assertEquals(size, response.getHeaders().getContentLength());
+        // 第二次直接命中缓存，不再解码
+        assertEquals(1, imageVariantService.stats().getHits() - before.getHits());
+    }
+
+    @Test
+    void uploadFile_throw_BadRequestException_when_file_too_large() {
+        // 测试配置中单个文件上限为1KB
+        var file = new MockMultipartFile("file", "big.png", "image/png", png(new String(new char[2048])));
+        var exception = assertThrows(BadRequestException.class, () -> blobsController.uploadFile(file));
+        assertEquals(ErrorCode.FileTooLarge, exception.code);
+    }
+
+    @Test
+    void batchUpload_report_each_file_and_keep_others_when_one_fails() {
+        var files = new MockMultipartFile[]{
+                new MockMultipartFile("file", "a.png", "image/png", png(UUID.randomUUID().toString())),
+                new MockMultipartFile("file", "big.png", "image/png", png(new String(new char[2048]))),
+                new MockMultipartFile("file", "c.png", "image/png", png(UUID.randomUUID().toString())),
+        };
+
+        var result = blobsController.batchUpload(files);
+
+        assertEquals(1, result.getError());
+        assertEquals(2, result.getData().size());
+        assertEquals(3, result.getFiles().size());
+        assertEquals("a.png", result.getFiles().get(0).getName());
+        assertEquals(result.getData().get(0), result.getFiles().get(0).getUrl());
+        assertNull(result.getFiles().get(1).getUrl());
+        assertNotNull(result.getFiles().get(1).getError());
+        assertEquals(result.getData().get(1), result.getFiles().get(2).getUrl());
+        for (var url : result.getData()) {
+            assertEquals("image/png", blobRepository.findById(idOf(url)).orElseThrow().getContentType());
+        }
+    }
+
+    @Test
+    void batchUpload_count_identical_files_in_one_batch_as_references_to_one_content() {
+        var content = png(UUID.randomUUID().toString());
+        var result = blobsController.batchUpload(new MockMultipartFile[]{
+                new MockMultipartFile("file", "a.png", "image/png", content),
+                new MockMultipartFile("file", "b.png", "image/png", content),
+        });
+
+        assertEquals(0, result.getError());
+        var hash = blobRepository.findById(idOf(result.getData().get(0))).orElseThrow().getContentHash();
+        assertEquals(hash, blobRepository.findById(idOf(result.getData().get(1))).orElseThrow().getContentHash());
+        assertEquals(2, blobContentRepository.findByContentHash(hash).getRefCount());
+    }
+
+    @Test
+    void batchUpload_throw_BadRequestException_when_too_many_files() {
+        // 默认一次最多20个文件
+        var files = new MockMultipartFile[21];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new MockMultipartFile("file", i + ".png", "image/png", png(UUID.randomUUID().toString()));
+        }
+        var exception = assertThrows(BadRequestException.class, () -> blobsController.batchUpload(files));
+        assertEquals(ErrorCode.InvalidOperation, exception.code);
+    }
+
+    @Test
+    void getFile_throw_NotFoundException_when_blob_not_exist() {
+        assertThrows(NotFoundException.class, () -> blobsController.getFile(1L, null, null, null));
+    }
+}
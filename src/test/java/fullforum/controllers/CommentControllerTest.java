@@ -151,6 +151,29 @@ public class CommentControllerTest extends BaseTest{
         assertNull(commentInDb);
     }
 
+    @Test
+    void removeComment_delete_replies_and_thumbs_of_comment() {
+        auth.setRealUserId(1);
+        documentRepository.save(new Document(2, 1, "hahah", "model1.description", "model1.data"));
+        commentRepository.save(new Comment(10L, 2L, 1L, "removed"));
+        commentRepository.save(new Comment(11L, 2L, 1L, "kept"));
+        replyRepository.save(new Reply(20L, 10L, 5L, 5L, "r1"));
+        replyRepository.save(new Reply(21L, 11L, 5L, 5L, "r2"));
+        thumbRepository.save(new Thumb(30L, 6L, 10L, TargetType.Comment));
+        thumbRepository.save(new Thumb(31L, 6L, 20L, TargetType.Reply));
+        thumbRepository.save(new Thumb(32L, 6L, 11L, TargetType.Comment));
+        thumbRepository.save(new Thumb(33L, 6L, 21L, TargetType.Reply));
+
+        commentsController.removeComment(10L);
+
+        assertNull(replyRepository.findById(20L).orElse(null));
+        assertNotNull(replyRepository.findById(21L).orElse(null));
+        assertNull(thumbRepository.findById(30L).orElse(null));
+        assertNull(thumbRepository.findById(31L).orElse(null));
+        assertNotNull(thumbRepository.findById(32L).orElse(null));
+        assertNotNull(thumbRepository.findById(33L).orElse(null));
+    }
+
     //test getCommentById
     @Test
     void getCommentById_return_null_when_comment_not_exist() {
@@ -355,9 +378,107 @@ public class CommentControllerTest extends BaseTest{
         }
     }
 
+    @Test
+    void getComments_attach_author_of_each_comment() {
+        auth.setRealUserId(1);
+        var document = new Document(2, 1, "hahah", "model1.description", "model1.data");
+        documentRepository.save(document);
 
+        userRepository.save(new User(1L, "alice", "123456", "", ""));
+        userRepository.save(new User(2L, "bob", "123456", "", ""));
 
+        commentRepository.save(new Comment(100L, 2L, 1L, "first"));
+        commentRepository.save(new Comment(101L, 2L, 2L, "second"));
+        commentRepository.save(new Comment(102L, 2L, 1L, "third"));
+        commentRepository.save(new Comment(103L, 2L, 3L, "author not exist"));
 
+        var comments = commentsController.getComments(2L, null);
 
+        assertEquals(4, comments.size());
+        for (var comment : comments) {
+            if (comment.getUserId() == 3L) {
+                assertNull(comment.getUser());
+            } else {
+                assertEquals(comment.getUserId(), comment.getUser().getId());
+            }
+        }
+        assertEquals("bob", comments.stream().filter(c -> c.getId() == 101L).findFirst().orElseThrow().getUser().getUsername());
+    }
+
+    //test getThreadedComments
 
+    @Test
+    void getThreadedComments_return_comments_with_replies_authors_and_my_thumbs() {
+        auth.setRealUserId(1);
+        documentRepository.save(new Document(2, 1, "hahah", "model1.description", "model1.data"));
+        userRepository.save(new User(1L, "alice", "123456", "", ""));
+        userRepository.save(new User(2L, "bob", "123456", "", ""));
+
+        commentRepository.save(new Comment(100L, 2L, 1L, "first"));
+        commentRepository.save(new Comment(101L, 2L, 2L, "second"));
+        commentRepository.save(new Comment(102L, 2L, 2L, "third"));
+        commentRepository.save(new Comment(103L, 3L, 2L, "other document"));
+        replyRepository.save(new Reply(200L, 100L, 2L, 1L, "reply 1"));
+        replyRepository.save(new Reply(201L, 101L, 1L, 2L, "reply 2"));
+        replyRepository.save(new Reply(202L, 100L, 1L, 2L, "reply 3"));
+        replyRepository.save(new Reply(203L, 103L, 1L, 2L, "reply of other document"));
+        thumbRepository.save(new Thumb(300L, 1L, 101L, TargetType.Comment));
+        thumbRepository.save(new Thumb(301L, 1L, 202L, TargetType.Reply));
+        thumbRepository.save(new Thumb(302L, 2L, 200L, TargetType.Reply));
+
+        var page = commentsController.getThreadedComments(2L, null, 2);
+
+        assertNotNull(page.getNextCursor());
+        var comments = page.getItems();
+        assertEquals(2, comments.size());
+
+        var first = comments.get(0);
+        assertEquals(100L, first.getId());
+        assertNull(first.getMyThumb());
+        assertEquals("alice", first.getUser().getUsername());
+        assertEquals(2, first.getReplies().size());
+        assertEquals(200L, first.getReplies().get(0).getId());
+        assertEquals("bob", first.getReplies().get(0).getUser().getUsername());
+        assertNull(first.getReplies().get(0).getMyThumb());
+        assertEquals(301L, first.getReplies().get(1).getMyThumb().getId());
+
+        var second = comments.get(1);
+        assertEquals(300L, second.getMyThumb().getId());
+        assertEquals(1, second.getReplies().size());
+
+        var rest = commentsController.getThreadedComments(2L, page.getNextCursor(), 2);
+        assertNull(rest.getNextCursor());
+        assertEquals(1, rest.getItems().size());
+        assertEquals(102L, rest.getItems().get(0).getId());
+        assertTrue(rest.getItems().get(0).getReplies().isEmpty());
+    }
+
+    @Test
+    void getThreadedComments_cap_replies_per_comment() {
+        auth.setRealUserId(1);
+        documentRepository.save(new Document(2, 1, "hahah", "model1.description", "model1.data"));
+        userRepository.save(new User(1L, "alice", "123456", "", ""));
+        commentRepository.save(new Comment(100L, 2L, 1L, "viral"));
+        commentRepository.save(new Comment(101L, 2L, 1L, "quiet"));
+        var total = CommentsController.REPLIES_PER_COMMENT + 3;
+        for (long i = 0; i < total; i++) {
+            replyRepository.save(new Reply(200L + i, 100L, 1L, 1L, "reply " + i));
+        }
+        replyRepository.save(new Reply(300L, 101L, 1L, 1L, "only reply"));
+
+        var comments = commentsController.getThreadedComments(2L, null, null).getItems();
+
+        var viral = comments.get(0).getReplies();
+        assertEquals(CommentsController.REPLIES_PER_COMMENT, viral.size());
+        for (int i = 0; i < viral.size(); i++) {
+            assertEquals(200L + i, viral.get(i).getId());
+        }
+        assertEquals(1, comments.get(1).getReplies().size());
+    }
+
+    @Test
+    void getThreadedComments_return_empty_page_when_document_is_not_exist() {
+        auth.setRealUserId(1);
+        assertTrue(commentsController.getThreadedComments(2L, null, null).getItems().isEmpty());
+    }
 }
@@ -2,21 +2,43 @@ package fullforum.controllers;
 
 import fullforum.BaseTest;
 import fullforum.data.models.*;
+import fullforum.data.repos.CommentRepository;
 import fullforum.data.repos.DocumentRepository;
+import fullforum.data.repos.ELockRepository;
+import fullforum.data.repos.FavoriteRepository;
 import fullforum.data.repos.MembershipRepository;
+import fullforum.data.repos.ReplyRepository;
 import fullforum.data.repos.TeamRepository;
+import fullforum.data.repos.ThumbRepository;
 import fullforum.data.repos.ViewRecordRepository;
 import fullforum.dependency.FakeAuth;
 import fullforum.dto.in.CreateDocumentModel;
+import fullforum.dto.in.DocumentDeltaModel;
 import fullforum.dto.in.PatchDocumentModel;
 import fullforum.dto.out.QDocument;
+import fullforum.errhand.BadRequestException;
+import fullforum.errhand.ConflictException;
 import fullforum.errhand.ForbidException;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
+import fullforum.services.DocumentEventHub;
+import fullforum.services.DocumentPermissionService;
 import fullforum.services.Snowflake;
+import fullforum.services.ViewRecordBuffer;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -41,9 +63,33 @@ public class DocumentControllerTest extends BaseTest {
     @Autowired
     ViewRecordRepository viewRecordRepository;
 
+    @Autowired
+    CommentRepository commentRepository;
+
+    @Autowired
+    ReplyRepository replyRepository;
+
+    @Autowired
+    ThumbRepository thumbRepository;
+
+    @Autowired
+    FavoriteRepository favoriteRepository;
+
+    @Autowired
+    ELockRepository elockRepository;
+
     @Autowired
     Snowflake snowflake;
 
+    @Autowired
+    ViewRecordBuffer viewRecordBuffer;
+
+    @Autowired
+    DocumentPermissionService permissionService;
+
+    @Autowired
+    DocumentEventHub eventHub;
+
     @Autowired
     FakeAuth auth;
 
@@ -174,6 +220,133 @@ public class DocumentControllerTest extends BaseTest {
 
     }
 
+    @Test
+    void patchDocumentDelta_apply_ops_and_bump_modifyCount() {
+        auth.setRealUserId(1);
+        documentRepository.save(new Document(1, 1, "title", "desc", "hello world"));
+
+        var model = new DocumentDeltaModel(0, List.of(
+                new DocumentDeltaModel.SpliceOp(0, 5, "goodbye"),
+                new DocumentDeltaModel.SpliceOp(13, 0, "!")));
+        var result = documentController.patchDocumentDelta(model, 1L);
+        assertEquals(1, result.modifyCount);
+
+        var docInDb = documentRepository.findById(1L).orElseThrow();
+        assertEquals("goodbye world!", docInDb.getData());
+        assertEquals(1, docInDb.getModifyCount());
+        assertEquals(1L, docInDb.getLastModifierId());
+
+        var next = new DocumentDeltaModel(1, List.of(new DocumentDeltaModel.SpliceOp(7, 7, "")));
+        assertEquals(2, documentController.patchDocumentDelta(next, 1L).modifyCount);
+        assertEquals("goodbye", documentRepository.findById(1L).orElseThrow().getData());
+    }
+
+    @Test
+    void patchDocumentDelta_throw_ConflictException_when_base_is_stale() {
+        auth.setRealUserId(1);
+        documentRepository.save(new Document(1, 1, "title", "desc", "hello"));
+        documentController.patchDocumentDelta(
+                new DocumentDeltaModel(0, List.of(new DocumentDeltaModel.SpliceOp(5, 0, "!"))), 1L);
+
+        var stale = new DocumentDeltaModel(0, List.of(new DocumentDeltaModel.SpliceOp(0, 0, "?")));
+        assertThrows(ConflictException.class, () -> documentController.patchDocumentDelta(stale, 1L));
+        assertEquals("hello!", documentRepository.findById(1L).orElseThrow().getData());
+    }
+
+    @Test
+    void patchDocument_throw_ConflictException_when_base_is_stale_and_bump_modifyCount() {
+        auth.setRealUserId(1);
+        documentRepository.save(new Document(1, 1, "title", "desc", "hello"));
+        documentController.patchDocumentDelta(
+                new DocumentDeltaModel(0, List.of(new DocumentDeltaModel.SpliceOp(5, 0, "!"))), 1L);
+
+        var stale = new PatchDocumentModel();
+        stale.data = "overwritten";
+        stale.baseModifyCount = 0;
+        assertThrows(ConflictException.class, () -> documentController.patchDocument(stale, 1L));
+        assertEquals("hello!", documentRepository.findById(1L).orElseThrow().getData());
+
+        var latest = new PatchDocumentModel();
+        latest.data = "replaced";
+        latest.baseModifyCount = 1;
+        documentController.patchDocument(latest, 1L);
+        assertEquals(2, documentRepository.findById(1L).orElseThrow().getModifyCount());
+
+        // 全量保存之后，基于旧版本的增量不能再应用
+        var delta = new DocumentDeltaModel(1, List.of(new DocumentDeltaModel.SpliceOp(0, 0, "?")));
+        assertThrows(ConflictException.class, () -> documentController.patchDocumentDelta(delta, 1L));
+        assertEquals("replaced", documentRepository.findById(1L).orElseThrow().getData());
+    }
+
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    void patchDocument_and_delta_racing_never_lose_an_update() throws Exception {
+        var id = 7441L;
+        documentRepository.save(new Document(id, 1, "title", "desc", "hello"));
+        auth.setRealUserId(1);
+        var request = RequestContextHolder.getRequestAttributes();
+        var pool = Executors.newFixedThreadPool(2);
+        var succeeded = new AtomicInteger();
+        try {
+            for (int round = 0; round < 20; round++) {
+                var base = documentRepository.findById(id).orElseThrow().getModifyCount();
+                var start = new CountDownLatch(1);
+                var full = new PatchDocumentModel();
+                full.data = "full " + round;
+                var delta = new DocumentDeltaModel(base, List.of(new DocumentDeltaModel.SpliceOp(0, 0, "d")));
+                var futures = List.<Future<?>>of(
+                        pool.submit(() -> save(request, start, succeeded,
+                                () -> documentController.patchDocument(full, id))),
+                        pool.submit(() -> save(request, start, succeeded,
+                                () -> documentController.patchDocumentDelta(delta, id))));
+                start.countDown();
+                for (var future : futures) {
+                    future.get(60, TimeUnit.SECONDS);
+                }
+                // 每次成功的保存都恰好让版本加一，没有被覆盖的保存
+                assertEquals(succeeded.get(), documentRepository.findById(id).orElseThrow().getModifyCount());
+            }
+        } finally {
+            pool.shutdownNow();
+            documentRepository.deleteById(id);
+        }
+    }
+
+    private static Void save(RequestAttributes request, CountDownLatch start, AtomicInteger succeeded,
+                             Runnable action) throws InterruptedException {
+        RequestContextHolder.setRequestAttributes(request);
+        try {
+            start.await();
+            action.run();
+            succeeded.incrementAndGet();
+        } catch (ConflictException e) {
+            // 被另一个保存抢先
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+        return null;
+    }
+
+    @Test
+    void patchDocumentDelta_throw_BadRequestException_when_op_out_of_range() {
+        auth.setRealUserId(1);
+        documentRepository.save(new Document(1, 1, "title", "desc", "hello"));
+
+        var model = new DocumentDeltaModel(0, List.of(new DocumentDeltaModel.SpliceOp(3, 5, "")));
+        assertThrows(BadRequestException.class, () -> documentController.patchDocumentDelta(model, 1L));
+    }
+
+    @Test
+    void patchDocumentDelta_throw_ForbidException_when_user_can_not_write() {
+        auth.setRealUserId(2);
+        var document = new Document(1, 1, "title", "desc", "hello");
+        document.setPublicDocumentAccess(Access.Read);
+        documentRepository.save(document);
+
+        var model = new DocumentDeltaModel(0, List.of(new DocumentDeltaModel.SpliceOp(0, 0, "x")));
+        assertThrows(ForbidException.class, () -> documentController.patchDocumentDelta(model, 1L));
+    }
+
     //test removeDocument
 
     @Test
@@ -211,6 +384,41 @@ public class DocumentControllerTest extends BaseTest {
         assertThat(docInDb1).isNull();
     }
 
+    @Test
+    void removeDocument_delete_everything_attached_to_document() {
+        auth.setRealUserId(3);
+        documentRepository.save(new Document(2, 3, "ss", "dsadas", "dasdawd"));
+        documentRepository.save(new Document(4, 3, "other", "dsadas", "dasdawd"));
+        commentRepository.save(new Comment(10L, 2L, 5L, "c1"));
+        commentRepository.save(new Comment(11L, 2L, 5L, "c2"));
+        commentRepository.save(new Comment(12L, 4L, 5L, "other document"));
+        replyRepository.save(new Reply(20L, 10L, 5L, 5L, "r1"));
+        replyRepository.save(new Reply(21L, 11L, 5L, 5L, "r2"));
+        replyRepository.save(new Reply(22L, 12L, 5L, 5L, "other document"));
+        thumbRepository.save(new Thumb(30L, 6L, 10L, TargetType.Comment));
+        thumbRepository.save(new Thumb(31L, 6L, 20L, TargetType.Reply));
+        thumbRepository.save(new Thumb(32L, 6L, 12L, TargetType.Comment));
+        thumbRepository.save(new Thumb(33L, 6L, 22L, TargetType.Reply));
+        favoriteRepository.save(new Favorite(40L, 6L, 2L));
+        favoriteRepository.save(new Favorite(41L, 6L, 4L));
+        viewRecordRepository.save(new ViewRecord(50L, 6L, 2L));
+        elockRepository.save(new ELock(60L, 2L));
+
+        documentController.removeDocument(2L);
+
+        assertThat(commentRepository.findAllById(List.of(10L, 11L, 12L))).extracting(Comment::getId)
+                .containsExactly(12L);
+        assertThat(replyRepository.findAllById(List.of(20L, 21L, 22L))).extracting(Reply::getId)
+                .containsExactly(22L);
+        assertThat(thumbRepository.findAllById(List.of(30L, 31L, 32L, 33L))).extracting(Thumb::getId)
+                .containsExactlyInAnyOrder(32L, 33L);
+        assertThat(favoriteRepository.findAllById(List.of(40L, 41L))).extracting(Favorite::getId)
+                .containsExactly(41L);
+        assertThat(viewRecordRepository.findById(50L)).isEmpty();
+        assertThat(elockRepository.findELockByDocumentId(2L)).isNull();
+        assertThat(documentRepository.findById(4L)).isPresent();
+    }
+
 
     //test getDocumentById
 
@@ -269,6 +477,30 @@ public class DocumentControllerTest extends BaseTest {
         assertNotNull(docInDb2);
     }
 
+    @Test
+    void getDocumentById_buffer_view_record_and_recent_list_include_it_before_flush() {
+        auth.setRealUserId(8);
+        documentRepository.save(new Document(2, 8, "ss", "dsadas", "dasdawd"));
+        documentRepository.save(new Document(7, 8, "dasda", "dasda", "Asdddad"));
+        viewRecordRepository.save(new ViewRecord(100L, 8, 7, 1000L));
+
+        documentController.getDocumentById(2L);
+        documentController.getDocumentById(2L);
+        assertThat(viewRecordRepository.count()).isEqualTo(1);
+
+        var recent = documentController.getDocuments(null, null, false, false, true);
+        assertThat(recent).extracting(QDocument::getId).containsExactly(2L, 7L);
+
+        documentController.getDocumentById(7L);
+        assertEquals(2, viewRecordBuffer.flush());
+        assertEquals(0, viewRecordBuffer.pendingCount());
+        assertThat(viewRecordRepository.count()).isEqualTo(2);
+        assertThat(viewRecordRepository.findByDocumentIdAndUserId(7L, 8L).getUpdatedAt()).isGreaterThan(1000L);
+
+        recent = documentController.getDocuments(null, null, false, false, true);
+        assertThat(recent).extracting(QDocument::getId).containsExactlyInAnyOrder(2L, 7L);
+    }
+
 
 
     //test getDocuments
@@ -354,12 +586,130 @@ public class DocumentControllerTest extends BaseTest {
     }
 
 
+    @Test
+    void getDocuments_use_team_access_for_members_and_public_access_for_others() {
+        var docEntity1 = new Document(1, 2, "qwqqqq", "sawqewqe", "sqdqwe");
+        var docEntity2 = new Document(2, 2, "aa", "wwwqewsdqe", "sqdqsswe");
+        var docEntity3 = new Document(3, 2, "dddqqqq", "ewqe", "kkk");
+
+        docEntity1.setTeamId(4L);
+        docEntity1.setPublicDocumentAccess(Access.None);
+        docEntity1.setTeamDocumentAccess(Access.Read);
+        docEntity2.setTeamId(5L);
+        docEntity2.setPublicDocumentAccess(Access.None);
+        docEntity3.setPublicDocumentAccess(Access.Read);
+        documentRepository.save(docEntity1);
+        documentRepository.save(docEntity2);
+        documentRepository.save(docEntity3);
+
+        membershipRepository.save(new Membership(123L, 4L, 66L));
+
+        auth.setRealUserId(66);
+        var documentList = documentController.getDocuments(2L, null, false, false, false);
+        assertThat(documentList).extracting(QDocument::getId).containsExactlyInAnyOrder(1L, 3L);
+
+        auth.setRealUserId(67);
+        documentList = documentController.getDocuments(2L, null, false, false, false);
+        assertThat(documentList).extracting(QDocument::getId).containsExactly(3L);
+    }
+
+    @Test
+    void getDocuments_return_summary_without_data_and_getDocumentById_return_data() {
+        documentRepository.save(new Document(1, 2, "title", "desc", "a very long body"));
+
+        auth.setRealUserId(2);
+        var documentList = documentController.getDocuments(2L, null, false, false, false);
+        assertEquals(1, documentList.size());
+        assertNull(documentList.get(0).getData());
+
+        assertEquals("a very long body", documentController.getDocumentById(1L).getData());
+    }
+
+    @Test
+    void getDocumentPage_walk_through_all_documents_by_cursor() {
+        for (long id = 1; id <= 5; id++) {
+            documentRepository.save(new Document(id, 2, "title" + id, "desc", "data"));
+        }
+
+        auth.setRealUserId(2);
+        var page1 = documentController.getDocumentPage(2L, null, false, false, false, null, 2);
+        assertThat(page1.getItems()).hasSize(2);
+        assertNotNull(page1.getNextCursor());
+
+        var page2 = documentController.getDocumentPage(2L, null, false, false, false, page1.getNextCursor(), 2);
+        assertThat(page2.getItems()).hasSize(2);
+        assertNotNull(page2.getNextCursor());
+
+        var page3 = documentController.getDocumentPage(2L, null, false, false, false, page2.getNextCursor(), 2);
+        assertThat(page3.getItems()).hasSize(1);
+        assertNull(page3.getNextCursor());
+
+        var paged = new ArrayList<QDocument>();
+        paged.addAll(page1.getItems());
+        paged.addAll(page2.getItems());
+        paged.addAll(page3.getItems());
+        assertThat(paged).extracting(QDocument::getId).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void getDocumentPage_throw_BadRequestException_when_cursor_is_invalid() {
+        auth.setRealUserId(2);
+        assertThrows(BadRequestException.class,
+                () -> documentController.getDocumentPage(2L, null, false, false, false, "not-a-cursor", 2));
+    }
+
+
     //test getCurrentUserPermission
     @Test
     void getCurrentUserPermission_throw_UnauthorizedException_when_user_is_not_login() {
         assertThrows(UnauthorizedException.class, () -> documentController.getCurrentUserPermission(1L));
     }
 
+    @Test
+    void subscribeEvents_throw_ForbidException_when_user_have_no_permission() {
+        var document = new Document(1, 1, "hahah", "model1.description", "model1.data");
+        document.setPublicDocumentAccess(Access.None);
+        documentRepository.save(document);
+
+        auth.setRealUserId(2);
+        assertThrows(ForbidException.class, () -> documentController.subscribeEvents(1L));
+    }
+
+    @Test
+    void subscribeEvents_register_subscriber_of_document() {
+        documentRepository.save(new Document(1, 1, "hahah", "model1.description", "model1.data"));
+
+        auth.setRealUserId(2);
+        var before = eventHub.subscriberCount(1L);
+        var emitter = documentController.subscribeEvents(1L);
+        assertNotNull(emitter);
+        assertEquals(before + 1, eventHub.subscriberCount(1L));
+        emitter.complete();
+    }
+
+    @Test
+    void getCurrentUserPermission_is_cached_and_refreshed_after_access_patch() {
+        var document = new Document(100L, 10L, "Dasdasd", "sadss", "Dsadasd");
+        document.setPublicDocumentAccess(Access.Read);
+        documentRepository.save(document);
+
+        auth.setRealUserId(1);
+        var missesBefore = permissionService.stats().getMisses();
+        assertEquals(Access.Read, documentController.getCurrentUserPermission(100L).documentAccess);
+        var hitsBefore = permissionService.stats().getHits();
+        assertEquals(Access.Read, documentController.getCurrentUserPermission(100L).documentAccess);
+        assertEquals(missesBefore + 1, permissionService.stats().getMisses());
+        assertEquals(hitsBefore + 1, permissionService.stats().getHits());
+
+        auth.setRealUserId(10);
+        var patch = new PatchDocumentModel();
+        patch.publicDocumentAccess = Access.None;
+        documentController.patchDocument(patch, 100L);
+
+        auth.setRealUserId(1);
+        assertEquals(Access.None, documentController.getCurrentUserPermission(100L).documentAccess);
+    }
+
     // TODO: rewrite test
 //    @Test
 //    void getCurrentUserPermission_return_user_permission_when_all_ok() {
@@ -0,0 +1,129 @@
+package fullforum.controllers;
+
+import fullforum.BaseTest;
+import fullforum.data.models.Document;
+import fullforum.data.models.ELock;
+import fullforum.data.models.User;
+import fullforum.data.repos.DocumentRepository;
+import fullforum.data.repos.ELockRepository;
+import fullforum.data.repos.UserRepository;
+import fullforum.dependency.FakeAuth;
+import fullforum.errhand.BadRequestException;
+import fullforum.errhand.UnauthorizedException;
+import fullforum.services.DbLeaseEditLockBackend;
+import fullforum.services.Snowflake;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ELockControllerTest extends BaseTest {
+
+    @Autowired
+    ELockController eLockController;
+
+    @Autowired
+    DocumentRepository documentRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ELockRepository eLockRepository;
+
+    @Autowired
+    Snowflake snowflake;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    FakeAuth auth;
+
+    @Test
+    void acquireLock_throw_UnauthorizedException_when_user_is_not_login() {
+        assertThrows(UnauthorizedException.class, () -> eLockController.acquireLock(1L));
+    }
+
+    @Test
+    void acquireLock_throw_BadRequestException_when_document_is_not_exist() {
+        auth.setRealUserId(1);
+        assertThrows(BadRequestException.class, () -> eLockController.acquireLock(1L));
+    }
+
+    @Test
+    void acquireLock_return_owner_when_lock_is_held_by_others() {
+        documentRepository.save(new Document(1, 1, "title", "desc", "data"));
+        userRepository.save(new User(1L, "alice", "123456", "", ""));
+
+        auth.setRealUserId(1);
+        assertTrue(eLockController.acquireLock(1L).isSuccess());
+        assertTrue(eLockController.acquireLock(1L).isSuccess());
+
+        auth.setRealUserId(2);
+        var result = eLockController.acquireLock(1L);
+        assertFalse(result.isSuccess());
+        assertEquals(1L, result.getOwnerRef().getId());
+        assertEquals(1L, eLockController.getOwner(1L).getId());
+    }
+
+    @Test
+    void acquireLock_persist_only_ownership_changes() {
+        documentRepository.save(new Document(1, 1, "title", "desc", "data"));
+
+        auth.setRealUserId(1);
+        eLockController.acquireLock(1L);
+        entityManager.clear();
+        var lock = eLockRepository.findELockByDocumentId(1L);
+        assertNotNull(lock);
+        assertEquals(1L, lock.getLastOwnerId());
+        var acquiredAt = lock.getLastAcquiredAt();
+
+        eLockController.acquireLock(1L);
+        entityManager.clear();
+        assertEquals(acquiredAt, eLockRepository.findELockByDocumentId(1L).getLastAcquiredAt());
+    }
+
+    @Test
+    void releaseLock_let_others_acquire() {
+        documentRepository.save(new Document(1, 1, "title", "desc", "data"));
+        userRepository.save(new User(1L, "alice", "123456", "", ""));
+
+        auth.setRealUserId(1);
+        eLockController.acquireLock(1L);
+
+        auth.setRealUserId(2);
+        eLockController.releaseLock(1L);
+        assertFalse(eLockController.acquireLock(1L).isSuccess());
+
+        auth.setRealUserId(1);
+        eLockController.releaseLock(1L);
+        assertNull(eLockController.getOwner(1L));
+
+        auth.setRealUserId(2);
+        assertTrue(eLockController.acquireLock(1L).isSuccess());
+    }
+
+    @Test
+    void db_lease_backend_use_conditional_update() {
+        eLockRepository.save(new ELock(snowflake.nextId(), 1L));
+        var backend = new DbLeaseEditLockBackend(eLockRepository, snowflake, transactionManager);
+
+        var now = System.currentTimeMillis();
+        assertTrue(backend.tryAcquire(1, 10, now).isNewlyAcquiredBy(10, now));
+        // 续期间隔小于TIME_OUT / 2时不写数据库
+        assertEquals(now, backend.tryAcquire(1, 10, now + 100).getRenewedAt());
+        assertEquals(10, backend.tryAcquire(1, 11, now + 200).getOwnerId());
+        assertEquals(10L, backend.getOwner(1, now + 200));
+
+        assertFalse(backend.release(1, 11, now + 300));
+        assertTrue(backend.release(1, 10, now + 300));
+        assertTrue(backend.tryAcquire(1, 11, now + 400).isNewlyAcquiredBy(11, now + 400));
+    }
+}
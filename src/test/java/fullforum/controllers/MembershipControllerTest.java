@@ -13,7 +13,6 @@ import fullforum.errhand.ForbidException;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.persistence.EntityManager;
@@ -25,9 +24,6 @@ public class MembershipControllerTest extends BaseTest {
     @Autowired
     FakeAuth auth;
 
-    @Autowired
-    ModelMapper mapper;
-
     @Autowired
     EntityManager entityManager;
 
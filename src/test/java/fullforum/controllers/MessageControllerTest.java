@@ -141,7 +141,8 @@ public class MessageControllerTest extends BaseTest {
         var ids = new ArrayList<Long>();
         ids.add(11L);
         ids.add(12L);
-        messageController.batchMarkRead(new BatchMarkReadModel(ids));
+        assertEquals(2, messageController.batchMarkRead(new BatchMarkReadModel(ids)).updated);
+        assertEquals(0, messageController.batchMarkRead(new BatchMarkReadModel(ids)).updated);
 
         for (var id : ids) {
             var messageInDb = messageRepository.findById(id).orElse(null);
@@ -167,7 +168,7 @@ public class MessageControllerTest extends BaseTest {
         messageRepository.save(message1);
         messageRepository.save(message2);
 
-        messageController.readAllMessages();
+        assertEquals(2, messageController.readAllMessages().updated);
 
         var messagesInDb = messageRepository.findAllByReceiverId(auth.userId());
         for (var message : messagesInDb) {
@@ -175,6 +176,39 @@ public class MessageControllerTest extends BaseTest {
         }
     }
 
+    @Test
+    void readAllMessage_only_touch_current_user_unread_messages() {
+        auth.setRealUserId(1);
+        var read = new Message(101L, -1L, 1L);
+        read.setHaveRead(true);
+        messageRepository.save(read);
+        messageRepository.save(new Message(102L, -1L, 1L));
+        messageRepository.save(new Message(103L, -1L, 2L));
+
+        assertEquals(1, messageController.readAllMessages().updated);
+
+        assertFalse(messageRepository.findById(103L).orElseThrow().getHaveRead());
+    }
+
+    //test getUnreadCount
+
+    @Test
+    void getUnreadCount_throw_UnauthorizedException_when_user_is_not_log_in() {
+        assertThrows(UnauthorizedException.class, () -> messageController.getUnreadCount());
+    }
+
+    @Test
+    void getUnreadCount_return_unread_messages_of_current_user() {
+        auth.setRealUserId(1);
+        var read = new Message(101L, -1L, 1L);
+        read.setHaveRead(true);
+        messageRepository.save(read);
+        messageRepository.save(new Message(102L, -1L, 1L));
+        messageRepository.save(new Message(103L, -1L, 2L));
+
+        assertEquals(1, messageController.getUnreadCount().count);
+    }
+
     //test getMessageById
 
     @Test
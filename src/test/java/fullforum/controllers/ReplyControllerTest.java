@@ -8,9 +8,9 @@ import fullforum.dto.in.CreateReplyModel;
 import fullforum.dto.out.QReply;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
+import fullforum.services.NotificationService;
 import fullforum.services.Snowflake;
 import org.junit.jupiter.api.Test;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import javax.persistence.EntityManager;
@@ -24,9 +24,6 @@ public class ReplyControllerTest extends BaseTest {
     @Autowired
     Snowflake snowflake;
 
-    @Autowired
-    ModelMapper mapper;
-
     @Autowired
     EntityManager entityManager;
 
@@ -51,6 +48,9 @@ public class ReplyControllerTest extends BaseTest {
     @Autowired
     MessageRepository messageRepository;
 
+    @Autowired
+    NotificationService notificationService;
+
     @Autowired
     MembershipRepository membershipRepository;
 
@@ -93,7 +93,9 @@ public class ReplyControllerTest extends BaseTest {
         assertEquals(replyInDb.getCommentId(), comment.getId());
         assertEquals(replyInDb.getTargetUserId(), model1.targetUserId);
         assertEquals(replyInDb.getUserId(), auth.userId());
+        assertEquals(2L, commentRepository.findById(comment.getId()).orElseThrow().getReplyCount());
 
+        notificationService.dispatchPending();
         var messages = messageRepository.findAllByReceiverId(100L);
         assertEquals(messages.size(), 1);
         for (Message message : messages) {
@@ -127,6 +129,18 @@ public class ReplyControllerTest extends BaseTest {
         assertNull(replyInDb);
     }
 
+    @Test
+    void deleteReply_decrease_reply_count_of_comment() {
+        auth.setRealUserId(100);
+        commentRepository.save(new Comment(10L, 222L, 23323L, "12313213"));
+        var rid = replyController.createReply(new CreateReplyModel(10L, 100L, "!23213"));
+        assertEquals(1L, commentRepository.findById(10L).orElseThrow().getReplyCount());
+
+        replyController.deleteReply(rid.id);
+
+        assertEquals(0L, commentRepository.findById(10L).orElseThrow().getReplyCount());
+    }
+
     //test getReplyById
     @Test
     void getReplyById_throw_NotFoundException_when_user_is_not_login() {
@@ -200,4 +214,22 @@ public class ReplyControllerTest extends BaseTest {
 
     }
 
+    @Test
+    void getReplies_attach_thumbs_of_current_user_instead_of_author() {
+        auth.setRealUserId(1);
+        userRepository.save(new User(100L, "32323", "@13123", "!@#231", "@!312312"));
+        replyRepository.save(new Reply(100L, 12L, 100L, 201L, "!23213"));
+        replyRepository.save(new Reply(101L, 12L, 100L, 201L, "!23213"));
+        // 作者给自己的回复点赞，当前用户只赞了第二条
+        thumbRepository.save(new Thumb(90L, 100L, 100L, TargetType.Reply));
+        var myThumb = new Thumb(91L, 1L, 101L, TargetType.Reply);
+        thumbRepository.save(myThumb);
+
+        var replies = replyController.getReplies(12L);
+
+        assertEquals(2, replies.size());
+        assertNull(replies.get(0).getMyThumb());
+        assertEquals(myThumb.getId(), replies.get(1).getMyThumb().getId());
+    }
+
 }
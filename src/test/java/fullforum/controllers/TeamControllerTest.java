@@ -12,6 +12,7 @@ import fullforum.errhand.BadRequestException;
 import fullforum.errhand.ForbidException;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
+import fullforum.services.NotificationService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -36,12 +37,18 @@ public class TeamControllerTest extends BaseTest {
     @Autowired
     MessageRepository messageRepository;
 
+    @Autowired
+    NotificationService notificationService;
+
     @Autowired
     DocumentRepository documentRepository;
 
     @Autowired
     MembershipRepository membershipRepository;
 
+    @Autowired
+    TeamRequestRepository teamRequestRepository;
+
 
 
     //test creatTeam
@@ -224,6 +231,7 @@ public class TeamControllerTest extends BaseTest {
         teamInDb = teamRepository.findById(1L).orElse(null);
         assertThat(teamInDb).isNull();
 
+        notificationService.dispatchPending();
         var messages = messageRepository.findAllByReceiverId(11L);
         assertThat(messages.size() == 1);
         for (Message message : messages) {
@@ -233,6 +241,20 @@ public class TeamControllerTest extends BaseTest {
 
         var membershipInDb = membershipRepository.findByUserIdAndTeamId(11L, 1L);
         assertNull(membershipInDb);
+        assertNull(documentRepository.findById(101L).orElseThrow().getTeamId());
+    }
+
+    @Test
+    void deleteTeam_delete_pending_team_requests() {
+        auth.setRealUserId(2);
+        teamRepository.save(new Team(1L, 2L, "dasas", "Dasd"));
+        teamRequestRepository.save(new TeamRequest(301L, 11L, 1L));
+        teamRequestRepository.save(new TeamRequest(302L, 11L, 5L));
+
+        teamsController.deleteTeam(1L);
+
+        assertNull(teamRequestRepository.findById(301L).orElse(null));
+        assertNotNull(teamRequestRepository.findById(302L).orElse(null));
     }
 
     //test getTeamById
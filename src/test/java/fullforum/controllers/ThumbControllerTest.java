@@ -11,12 +11,23 @@ import fullforum.data.repos.ThumbRepository;
 import fullforum.data.repos.UserRepository;
 import fullforum.dependency.FakeAuth;
 import fullforum.dto.in.CreatThumbUpModel;
+import fullforum.errhand.BadRequestException;
+import fullforum.errhand.ErrorCode;
 import fullforum.errhand.ForbidException;
 import fullforum.errhand.NotFoundException;
 import fullforum.errhand.UnauthorizedException;
 import fullforum.services.Snowflake;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -83,6 +94,75 @@ public class ThumbControllerTest extends BaseTest {
 
     }
 
+    @Test
+    void giveThumbUp_throw_BadRequestException_when_user_already_give_thumb() {
+        var user = new User(333, "dsaadsa", "Dsadsdadd","Dsadsdad", "Asdda");
+        userRepository.save(user);
+        commentRepository.save(new Comment(10L, 999, 888, "Dsadad"));
+        auth.setRealUserId(333);
+
+        var model = new CreatThumbUpModel(10L, TargetType.Comment);
+        thumbController.giveThumbUp(model);
+
+        var e = assertThrows(BadRequestException.class, () -> thumbController.giveThumbUp(model));
+        assertEquals(ErrorCode.UniqueViolation, e.code);
+    }
+
+    /**
+     * 每个点赞在自己的事务中提交，测试结束时手动清理数据
+     */
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    void giveThumbUp_concurrent_thumbs_from_one_user_insert_exactly_one_row() throws Exception {
+        var user = new User(7331L, "thumb-race", "Dsadsdadd", "Dsadsdad", "Asdda");
+        userRepository.save(user);
+        // 给自己的评论点赞，不会产生通知
+        commentRepository.save(new Comment(7332L, 999, 7331L, "Dsadad"));
+        auth.setRealUserId(7331L);
+        var request = RequestContextHolder.getRequestAttributes();
+
+        var attempts = 100;
+        var pool = Executors.newFixedThreadPool(16);
+        var start = new CountDownLatch(1);
+        var succeeded = new AtomicInteger();
+        var rejected = new AtomicInteger();
+        try {
+            var futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < attempts; i++) {
+                futures.add(pool.submit(() -> {
+                    RequestContextHolder.setRequestAttributes(request);
+                    try {
+                        start.await();
+                        thumbController.giveThumbUp(new CreatThumbUpModel(7332L, TargetType.Comment));
+                        succeeded.incrementAndGet();
+                    } catch (BadRequestException e) {
+                        rejected.incrementAndGet();
+                    } finally {
+                        RequestContextHolder.resetRequestAttributes();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (var future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+            assertEquals(1, succeeded.get());
+            assertEquals(attempts - 1, rejected.get());
+            assertNotNull(thumbRepository.findByUserIdAndTargetIdAndType(7331L, 7332L, TargetType.Comment));
+            assertEquals(1, commentRepository.findById(7332L).orElseThrow().getThumbCount());
+        } finally {
+            pool.shutdownNow();
+            var thumb = thumbRepository.findByUserIdAndTargetIdAndType(7331L, 7332L, TargetType.Comment);
+            if (thumb != null) {
+                thumbRepository.deleteById(thumb.getId());
+            }
+            commentRepository.deleteById(7332L);
+            userRepository.deleteById(7331L);
+        }
+    }
+
     //test deleteThumb
 
     @Test
@@ -3,6 +3,9 @@ package fullforum.controllers;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import fullforum.dependency.FakeAuth;
 import fullforum.errhand.BadRequestException;
+import fullforum.services.Auth;
+import fullforum.services.PasswordHasher;
+import fullforum.services.SessionStore;
 import fullforum.services.Snowflake;
 import fullforum.BaseTest;
 import fullforum.dto.in.CreateUserModel;
@@ -16,6 +19,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.context.annotation.RequestScope;
@@ -38,6 +42,9 @@ class UsersControllerTest extends BaseTest {
     @Autowired
     Snowflake snowflake;
 
+    @Autowired
+    PasswordHasher passwordHasher;
+
     @Autowired
     UserRepository userRepository;
 
@@ -47,6 +54,9 @@ class UsersControllerTest extends BaseTest {
     @Autowired
     MockMvc mockMvc;
 
+    @Autowired
+    SessionStore sessionStore;
+
     @Test
     void createUser_throw_Model_when_model_is_invalid() {
         var model1 = new CreateUserModel();
@@ -90,6 +100,7 @@ class UsersControllerTest extends BaseTest {
         var userInDb = userRepository.findById(userId).orElse(null);
         assertNotNull(userInDb);
         Assertions.assertEquals(userId, userInDb.getId());
+        assertTrue(userInDb.checkPassword(model.password, passwordHasher));
 //        Assertions.assertEquals(model.username, userInDb.g);
 //        Assertions.assertEquals(model.password, userInDb.getPassword());
     }
@@ -114,7 +125,7 @@ class UsersControllerTest extends BaseTest {
     @Test
     void patchUser_throw_unauthorized_when_not_login() {
         var model = new PatchUserModel("o234a6", "asdd", "asdasdasd");
-        assertThrows(UnauthorizedException.class, () -> usersController.patchUser(model, 1));
+        assertThrows(UnauthorizedException.class, () -> usersController.patchUser(model, 1, new MockHttpServletResponse()));
     }
 
     @Test
@@ -124,7 +135,7 @@ class UsersControllerTest extends BaseTest {
 
         // Act & Assert
         var model = new PatchUserModel("o234a6", "2313123", "Dasdsdsd");
-        assertThrows(NotFoundException.class, () -> usersController.patchUser(model, 2));
+        assertThrows(NotFoundException.class, () -> usersController.patchUser(model, 2, new MockHttpServletResponse()));
     }
 
     @Test
@@ -137,7 +148,7 @@ class UsersControllerTest extends BaseTest {
 
         // Act & Assert
         var model = new PatchUserModel("o234a6", "sadas", "ASda");
-        assertThrows(ForbidException.class, () -> usersController.patchUser(model, 2));
+        assertThrows(ForbidException.class, () -> usersController.patchUser(model, 2, new MockHttpServletResponse()));
     }
 
     @Test
@@ -149,11 +160,32 @@ class UsersControllerTest extends BaseTest {
 
         // Act
         var model = new PatchUserModel("o234a6", "ASdsada", "ASDdasdas");
-        usersController.patchUser(model, auth.userId());
+        usersController.patchUser(model, auth.userId(), new MockHttpServletResponse());
 
         // Assert
         var userInDatabase = userRepository.getOne(auth.userId());
-        org.assertj.core.api.Assertions.assertThat(userInDatabase.getPassword()).isEqualTo(model.password);
+        assertThat(userInDatabase.getPassword()).isNotEqualTo(model.password);
+        assertTrue(userInDatabase.checkPassword(model.password, passwordHasher));
+    }
+
+    @Test
+    void patchUser_revoke_other_sessions_and_issue_new_token_when_password_changed() {
+        auth.setRealUserId(1);
+        userRepository.save(new User(1, "asdasda", "asdsadsa", "ASdad", "ASdasd"));
+        var stolen = sessionStore.issue(1L);
+        var other = sessionStore.issue(2L);
+        assertEquals(1L, sessionStore.resolve(stolen));
+
+        var response = new MockHttpServletResponse();
+        usersController.patchUser(new PatchUserModel("o234a6", null, null), 1, response);
+
+        assertNull(sessionStore.resolve(stolen));
+        assertEquals(2L, sessionStore.resolve(other));
+        assertEquals(1L, sessionStore.resolve(response.getCookie(Auth.TOKEN_COOKIE).getValue()));
+
+        // 只修改资料时不影响登录
+        usersController.patchUser(new PatchUserModel(null, "desc", null), 1, new MockHttpServletResponse());
+        assertEquals(1L, sessionStore.resolve(response.getCookie(Auth.TOKEN_COOKIE).getValue()));
     }
 
     // region getUserById test
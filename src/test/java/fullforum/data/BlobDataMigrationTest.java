@@ -0,0 +1,43 @@
+package fullforum.data;
+
+import fullforum.services.FileBlobStore;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 使用独立的内存数据库模拟旧版本的blob2表
+ */
+public class BlobDataMigrationTest {
+
+    @Test
+    void move_legacy_data_column_into_file_store(@TempDir Path root) throws Exception {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:legacy-blob;DB_CLOSE_DELAY=-1");
+        var migration = new BlobDataMigration();
+        migration.jdbcTemplate = new JdbcTemplate(dataSource);
+        migration.blobStore = new FileBlobStore(root.toString());
+        var jdbc = migration.jdbcTemplate;
+        jdbc.execute("create table blob2 (id bigint primary key, created_at bigint, updated_at bigint," +
+                " data blob, size bigint not null default 0, content_type varchar(255), content_hash varchar(255))");
+        jdbc.update("insert into blob2 (id, data) values (1, ?)", (Object) new byte[]{1, 2, 3});
+
+        migration.run(null);
+
+        var hash = jdbc.queryForObject("select content_hash from blob2 where id = 1", String.class);
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(migration.blobStore.pathOf(hash)));
+        assertEquals(3L, jdbc.queryForObject("select size from blob2 where id = 1", Long.class));
+        assertEquals("image/jpeg", jdbc.queryForObject("select content_type from blob2 where id = 1", String.class));
+        assertEquals(0, jdbc.queryForObject("select count(*) from blob2 where data is not null", Integer.class));
+
+        // 再次运行不会重复处理
+        migration.run(null);
+        assertEquals(hash, jdbc.queryForObject("select content_hash from blob2 where id = 1", String.class));
+    }
+}
@@ -0,0 +1,30 @@
+package fullforum.data;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommentReplyCountMigrationTest {
+
+    @Test
+    void fill_missing_reply_counts() {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:reply-count;DB_CLOSE_DELAY=-1");
+        var migration = new CommentReplyCountMigration();
+        migration.jdbcTemplate = new JdbcTemplate(dataSource);
+        var jdbc = migration.jdbcTemplate;
+        jdbc.execute("create table comment (id bigint primary key, reply_count bigint)");
+        jdbc.execute("create table reply (id bigint primary key, comment_id bigint)");
+        jdbc.update("insert into comment values (1, null), (2, null), (3, 7)");
+        jdbc.update("insert into reply values (10, 1), (11, 1), (12, 3)");
+
+        migration.run(null);
+
+        assertEquals(2, jdbc.queryForObject("select reply_count from comment where id = 1", Long.class));
+        assertEquals(0, jdbc.queryForObject("select reply_count from comment where id = 2", Long.class));
+        // 已有的计数不会被覆盖
+        assertEquals(7, jdbc.queryForObject("select reply_count from comment where id = 3", Long.class));
+    }
+}
@@ -0,0 +1,53 @@
+package fullforum.data;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 使用独立的内存数据库模拟旧版本的表结构
+ */
+public class DocumentBodyMigrationTest {
+
+    private DocumentBodyMigration migrationOn(String url) {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL(url);
+        var migration = new DocumentBodyMigration();
+        migration.jdbcTemplate = new JdbcTemplate(dataSource);
+        migration.transactionManager = new DataSourceTransactionManager(dataSource);
+        return migration;
+    }
+
+    @Test
+    void move_legacy_data_column_into_document_body() {
+        var migration = migrationOn("jdbc:h2:mem:legacy;DB_CLOSE_DELAY=-1");
+        var jdbc = migration.jdbcTemplate;
+        jdbc.execute("create table document (id bigint primary key, created_at bigint, updated_at bigint," +
+                " data text, body_id bigint)");
+        jdbc.execute("create table document_body (id bigint primary key, created_at bigint, updated_at bigint," +
+                " data text)");
+        jdbc.update("insert into document (id, created_at, updated_at, data) values (1, 10, 20, 'hello')");
+        jdbc.update("insert into document (id, created_at, updated_at, data) values (2, 10, 20, null)");
+
+        migration.run(null);
+
+        assertEquals("hello", jdbc.queryForObject("select data from document_body where id = 1", String.class));
+        assertEquals(2, jdbc.queryForObject("select count(*) from document_body", Integer.class));
+        assertEquals(0, jdbc.queryForObject("select count(*) from document where body_id is null", Integer.class));
+        assertEquals(0, jdbc.queryForObject("select count(*) from document where data is not null", Integer.class));
+
+        // 再次启动时没有需要搬的数据
+        migration.run(null);
+        assertEquals(2, jdbc.queryForObject("select count(*) from document_body", Integer.class));
+    }
+
+    @Test
+    void skip_when_there_is_no_legacy_column() {
+        var migration = migrationOn("jdbc:h2:mem:fresh;DB_CLOSE_DELAY=-1");
+        migration.jdbcTemplate.execute("create table document (id bigint primary key, body_id bigint)");
+        assertDoesNotThrow(() -> migration.run(null));
+    }
+}
@@ -0,0 +1,33 @@
+package fullforum.data;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ELockDedupMigrationTest {
+
+    @Test
+    void remove_duplicate_locks_and_add_unique_constraint() {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:elock-dedup;DB_CLOSE_DELAY=-1");
+        var migration = new ELockDedupMigration();
+        migration.jdbcTemplate = new JdbcTemplate(dataSource);
+        migration.transactionManager = new DataSourceTransactionManager(dataSource);
+        var jdbc = migration.jdbcTemplate;
+        jdbc.execute("create table elock (id bigint primary key, document_id bigint)");
+        // 文档10有三行，文档20只有一行
+        jdbc.update("insert into elock values (1, 10), (2, 10), (3, 10), (4, 20)");
+
+        migration.run(null);
+
+        assertEquals(2, jdbc.queryForObject("select count(*) from elock", Integer.class));
+        assertEquals(1, jdbc.queryForObject("select id from elock where document_id = 10", Integer.class));
+        assertThrows(Exception.class, () -> jdbc.update("insert into elock values (5, 10)"));
+
+        // 没有重复数据时什么都不做
+        assertDoesNotThrow(() -> migration.run(null));
+    }
+}
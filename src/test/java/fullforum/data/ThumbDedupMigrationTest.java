@@ -0,0 +1,58 @@
+package fullforum.data;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThumbDedupMigrationTest {
+
+    @Test
+    void remove_duplicate_thumbs_and_add_unique_constraint() {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:thumb-dedup;DB_CLOSE_DELAY=-1");
+        var migration = new ThumbDedupMigration();
+        migration.jdbcTemplate = new JdbcTemplate(dataSource);
+        migration.transactionManager = new DataSourceTransactionManager(dataSource);
+        var jdbc = migration.jdbcTemplate;
+        jdbc.execute("create table thumb (id bigint primary key, user_id bigint, target_id bigint, type int)");
+        jdbc.execute("create table comment (id bigint primary key, thumb_count bigint)");
+        jdbc.execute("create table reply (id bigint primary key, thumb_count int)");
+        jdbc.update("insert into comment values (10, 3)");
+        jdbc.update("insert into reply values (10, 1)");
+        // 用户1给评论10点了三次赞，给同id的回复点了一次
+        jdbc.update("insert into thumb values (1, 1, 10, 0), (2, 1, 10, 0), (3, 1, 10, 0), (4, 1, 10, 1)");
+
+        migration.run(null);
+
+        assertEquals(2, jdbc.queryForObject("select count(*) from thumb", Integer.class));
+        assertEquals(1, jdbc.queryForObject("select min(id) from thumb where type = 0", Integer.class));
+        assertEquals(1, jdbc.queryForObject("select thumb_count from comment where id = 10", Integer.class));
+        assertEquals(1, jdbc.queryForObject("select thumb_count from reply where id = 10", Integer.class));
+        assertThrows(Exception.class, () -> jdbc.update("insert into thumb values (5, 1, 10, 0)"));
+
+        // 没有重复数据时什么都不做
+        assertDoesNotThrow(() -> migration.run(null));
+    }
+
+    @Test
+    void skip_constraint_that_already_exists() {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:thumb-dedup-existing;DB_CLOSE_DELAY=-1");
+        var migration = new ThumbDedupMigration();
+        migration.jdbcTemplate = new JdbcTemplate(dataSource);
+        migration.transactionManager = new DataSourceTransactionManager(dataSource);
+        var jdbc = migration.jdbcTemplate;
+        // 约束已经被其他节点或手工加上（这里用不同的列模拟，才能留下重复数据）
+        jdbc.execute("create table thumb (id bigint primary key, user_id bigint, target_id bigint, type int," +
+                " constraint uk_thumb_user_target_type unique (id, user_id))");
+        jdbc.execute("create table comment (id bigint primary key, thumb_count bigint)");
+        jdbc.update("insert into comment values (10, 2)");
+        jdbc.update("insert into thumb values (1, 1, 10, 0), (2, 1, 10, 0)");
+
+        assertDoesNotThrow(() -> migration.run(null));
+        assertEquals(1, jdbc.queryForObject("select count(*) from thumb", Integer.class));
+    }
+}
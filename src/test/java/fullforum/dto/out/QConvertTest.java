@@ -0,0 +1,99 @@
+package fullforum.dto.out;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fullforum.data.models.*;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 手写的convert与原来ModelMapper的映射结果应当一致（比较序列化后的json）
+ */
+public class QConvertTest {
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final ObjectMapper json = new ObjectMapper();
+
+    private void assertSameJson(Object expected, Object actual) throws JsonProcessingException {
+        assertEquals(json.writeValueAsString(expected), json.writeValueAsString(actual));
+    }
+
+    @Test
+    void quser_convert_same_as_modelmapper() throws JsonProcessingException {
+        var user = new User(5, "sdadas", "adsadasdsadsad", "desc", "/avatar.png");
+        assertSameJson(modelMapper.map(user, Quser.class), Quser.convert(user));
+        assertNull(Quser.convert(null));
+    }
+
+    @Test
+    void qdocument_convert_same_as_modelmapper() throws JsonProcessingException {
+        var document = new Document(1, 2, "title", "desc", "data");
+        document.setTeamId(3L);
+        document.setIsAbandoned(true);
+        document.setPublicDocumentAccess(Access.Read);
+        document.setTeamCanShare(false);
+        document.setModifyCountAndModifier(7);
+        assertSameJson(modelMapper.map(document, QDocument.class), QDocument.convert(document));
+        assertNull(QDocument.convert(null));
+    }
+
+    @Test
+    void qcomment_and_qreply_convert_same_as_modelmapper() throws JsonProcessingException {
+        var user = Quser.convert(new User(5, "sdadas", "adsadasdsadsad", "desc", ""));
+        var thumb = new Thumb(9, 5, 10, TargetType.Comment);
+
+        var comment = new Comment(10, 1, 5, "content");
+        comment.thumbUp();
+        var expectedComment = modelMapper.map(comment, QComment.class);
+        expectedComment.setUser(user);
+        expectedComment.setMyThumb(thumb);
+        assertSameJson(expectedComment, QComment.convert(comment, user, thumb));
+
+        var reply = new Reply(11, 10, 5, 6, "reply");
+        var expectedReply = modelMapper.map(reply, QReply.class);
+        expectedReply.setUser(user);
+        assertSameJson(expectedReply, QReply.convert(reply, user, null));
+    }
+
+    @Test
+    void qmessage_convert_same_as_modelmapper() throws JsonProcessingException {
+        var message = new Message(1L, 2L, 3L);
+        message.setTitle("title");
+        message.setContent("content");
+        message.setLink("/link");
+        message.setHaveRead(true);
+        var expected = modelMapper.map(message, QMessage.class);
+        expected.setSender(null);
+        assertSameJson(expected, QMessage.convert(message, null));
+    }
+
+    @Test
+    void team_related_convert_same_as_modelmapper() throws JsonProcessingException {
+        var user = Quser.convert(new User(5, "sdadas", "adsadasdsadsad", "desc", ""));
+        var team = new Team(1L, 5L, "name", "desc");
+        assertSameJson(modelMapper.map(team, QTeam.class), QTeam.convert(team));
+        var qTeam = QTeam.convert(team);
+
+        var membership = new Membership(2L, 1L, 5L);
+        var expectedMembership = modelMapper.map(membership, QMembership.class);
+        expectedMembership.setUser(user);
+        expectedMembership.setTeam(qTeam);
+        assertSameJson(expectedMembership, QMembership.convert(membership, user, qTeam));
+
+        var request = new TeamRequest(3L, 5L, 1L);
+        request.handle(true);
+        var expectedRequest = modelMapper.map(request, QTeamRequest.class);
+        expectedRequest.setSender(user);
+        expectedRequest.setTeam(qTeam);
+        assertSameJson(expectedRequest, QTeamRequest.convert(request, qTeam, user));
+    }
+
+    @Test
+    void qarticle_convert_same_as_modelmapper() throws JsonProcessingException {
+        var article = new Article(1, "title", "text", 5);
+        var expected = modelMapper.map(article, QArticle.class);
+        expected.user = null;
+        assertSameJson(expected, QArticle.convert(article, null));
+    }
+}
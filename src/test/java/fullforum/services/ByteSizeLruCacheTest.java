@@ -0,0 +1,36 @@
+package fullforum.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteSizeLruCacheTest {
+
+    @Test
+    void evict_least_recently_used_when_total_bytes_exceeded() {
+        var cache = new ByteSizeLruCache<String>(10);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        assertNotNull(cache.get("a"));
+
+        cache.put("c", new byte[4]);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(8, cache.totalBytes());
+    }
+
+    @Test
+    void do_not_cache_value_larger_than_capacity() {
+        var cache = new ByteSizeLruCache<String>(10);
+        cache.put("a", new byte[4]);
+        cache.put("big", new byte[11]);
+
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("a"));
+
+        cache.put("a", new byte[6]);
+        assertEquals(6, cache.totalBytes());
+    }
+}
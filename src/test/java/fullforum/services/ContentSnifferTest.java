@@ -0,0 +1,41 @@
+package fullforum.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentSnifferTest {
+
+    private static String sniff(int... bytes) {
+        var head = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            head[i] = (byte) bytes[i];
+        }
+        return ContentSniffer.sniff(head, head.length);
+    }
+
+    @Test
+    void sniff_common_formats_by_magic_number() {
+        assertEquals("image/png", sniff(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0));
+        assertEquals("image/jpeg", sniff(0xFF, 0xD8, 0xFF, 0xE0));
+        assertEquals("image/gif", sniff('G', 'I', 'F', '8', '9', 'a'));
+        assertEquals("image/webp", sniff('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P'));
+        assertEquals("application/pdf", sniff('%', 'P', 'D', 'F', '-', '1'));
+        assertNull(sniff('<', 'h', 't', 'm', 'l', '>'));
+        assertNull(sniff(0x89, 'P'));
+    }
+
+    @Test
+    void sniff_stream_does_not_consume_input() throws Exception {
+        var bytes = new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 1, 2, 3};
+        var input = new BufferedInputStream(new ByteArrayInputStream(bytes));
+
+        assertEquals("image/jpeg", ContentSniffer.sniff(input));
+        assertArrayEquals(bytes, input.readAllBytes());
+        assertEquals(ContentSniffer.OCTET_STREAM,
+                ContentSniffer.sniff(new BufferedInputStream(new ByteArrayInputStream(new byte[0]))));
+    }
+}
@@ -0,0 +1,61 @@
+package fullforum.services;
+
+import fullforum.dto.out.DocumentEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentEventHubTest {
+
+    /**
+     * 记录发送的事件，不经过真正的http连接
+     */
+    static class RecordingEmitter extends SseEmitter {
+        final List<SseEventBuilder> sent = new ArrayList<>();
+        boolean broken = false;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (broken) {
+                throw new IOException("closed");
+            }
+            sent.add(builder);
+        }
+    }
+
+    @Test
+    void publish_only_to_subscribers_of_the_document() {
+        var hub = new DocumentEventHub(Runnable::run);
+        var emitter1 = new RecordingEmitter();
+        var emitter2 = new RecordingEmitter();
+        hub.subscribe(1, emitter1);
+        hub.subscribe(2, emitter2);
+
+        hub.publish(DocumentEvent.documentUpdated(1, 10L, 3));
+        hub.publish(DocumentEvent.lockAcquired(1, 10));
+
+        assertEquals(2, emitter1.sent.size());
+        assertEquals(0, emitter2.sent.size());
+    }
+
+    @Test
+    void broken_subscriber_is_removed() {
+        var hub = new DocumentEventHub(Runnable::run);
+        var alive = new RecordingEmitter();
+        var broken = new RecordingEmitter();
+        broken.broken = true;
+        hub.subscribe(1, alive);
+        hub.subscribe(1, broken);
+        assertEquals(2, hub.subscriberCount(1));
+
+        hub.publish(DocumentEvent.lockReleased(1, 10));
+
+        assertEquals(1, hub.subscriberCount(1));
+        assertEquals(1, alive.sent.size());
+    }
+}
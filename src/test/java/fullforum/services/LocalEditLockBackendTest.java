@@ -0,0 +1,77 @@
+package fullforum.services;
+
+import fullforum.data.models.ELock;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalEditLockBackendTest {
+
+    @Test
+    void acquire_renew_and_contend() {
+        var backend = new LocalEditLockBackend();
+
+        var lease = backend.tryAcquire(1, 10, 1000);
+        assertTrue(lease.isNewlyAcquiredBy(10, 1000));
+
+        var renewed = backend.tryAcquire(1, 10, 2000);
+        assertTrue(renewed.isOwnedBy(10));
+        assertFalse(renewed.isNewlyAcquiredBy(10, 2000));
+        assertEquals(1000, renewed.getOwnedSince());
+
+        var contended = backend.tryAcquire(1, 11, 2500);
+        assertEquals(10, contended.getOwnerId());
+        assertTrue(backend.isHeldLocally(1, 10, 2500));
+        assertFalse(backend.isHeldLocally(1, 11, 2500));
+    }
+
+    @Test
+    void expired_lock_can_be_taken_over() {
+        var backend = new LocalEditLockBackend();
+        backend.tryAcquire(1, 10, 1000);
+
+        var after = 1000 + ELock.TIME_OUT + 1;
+        assertNull(backend.getOwner(1, after));
+        assertTrue(backend.tryAcquire(1, 11, after).isNewlyAcquiredBy(11, after));
+    }
+
+    @Test
+    void only_owner_can_release() {
+        var backend = new LocalEditLockBackend();
+        backend.tryAcquire(1, 10, 1000);
+
+        assertFalse(backend.release(1, 11, 1100));
+        assertEquals(10L, backend.getOwner(1, 1100));
+        assertTrue(backend.release(1, 10, 1200));
+        assertNull(backend.getOwner(1, 1200));
+        assertTrue(backend.tryAcquire(1, 11, 1300).isOwnedBy(11));
+    }
+
+    @Test
+    void concurrent_first_acquirers_get_exactly_one_owner() throws InterruptedException {
+        var backend = new LocalEditLockBackend();
+        var threads = 16;
+        var pool = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        var winners = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            long userId = 100 + i;
+            pool.submit(() -> {
+                start.await();
+                if (backend.tryAcquire(1, userId, 1000).isNewlyAcquiredBy(userId, 1000)) {
+                    winners.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1, winners.get());
+    }
+}
@@ -0,0 +1,61 @@
+package fullforum.services;
+
+import fullforum.BaseTest;
+import fullforum.data.repos.MessageRepository;
+import fullforum.data.repos.NotificationOutboxRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationServiceTest extends BaseTest {
+
+    @Autowired
+    NotificationService notificationService;
+
+    @Autowired
+    NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    @Test
+    void notify_only_enqueue_one_outbox_row_until_dispatched() {
+        var receivers = new ArrayList<Long>();
+        for (long i = 0; i < 450; i++) {
+            receivers.add(9000L + i);
+        }
+        notificationService.notifyAll(NotificationService.SYSTEM_SENDER, receivers, "团队解散通知", "已解散", null);
+
+        assertEquals(1, outboxRepository.count());
+        assertTrue(messageRepository.findAllByReceiverId(9000L).isEmpty());
+
+        assertEquals(450, notificationService.dispatchPending());
+
+        assertEquals(0, outboxRepository.count());
+        for (var receiverId : List.of(9000L, 9449L)) {
+            var messages = messageRepository.findAllByReceiverId(receiverId);
+            assertEquals(1, messages.size());
+            assertEquals(-1L, messages.get(0).getSenderId());
+            assertEquals("团队解散通知", messages.get(0).getTitle());
+            assertFalse(messages.get(0).getHaveRead());
+        }
+    }
+
+    @Test
+    void dispatch_keep_event_fields() {
+        notificationService.notify(3L, 4L, "团队邀请通知", "邀请你加入团队", "/team/1");
+        notificationService.notifyAll(3L, List.of(), "ignored", "ignored", null);
+
+        assertEquals(1, notificationService.dispatchPending());
+        assertEquals(0, notificationService.dispatchPending());
+
+        var message = messageRepository.findAllByReceiverId(4L).get(0);
+        assertEquals(3L, message.getSenderId());
+        assertEquals("邀请你加入团队", message.getContent());
+        assertEquals("/team/1", message.getLink());
+    }
+}
@@ -0,0 +1,42 @@
+package fullforum.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHasherTest {
+    private final PasswordHasher hasher = new PasswordHasher(1000, 100, 60000);
+
+    @Test
+    void hash_is_salted_and_verifiable() {
+        var hash1 = hasher.hash("aaaaaa");
+        var hash2 = hasher.hash("aaaaaa");
+
+        assertTrue(hash1.startsWith("pbkdf2$1000$"));
+        assertNotEquals(hash1, hash2);
+        assertTrue(hasher.verify("aaaaaa", hash1));
+        assertTrue(hasher.verify("aaaaaa", hash2));
+        assertFalse(hasher.verify("aaaaab", hash1));
+        assertFalse(hasher.needsRehash(hash1));
+    }
+
+    @Test
+    void plaintext_and_weaker_hash_need_rehash() {
+        assertTrue(hasher.verify("aaaaaa", "aaaaaa"));
+        assertFalse(hasher.verify("aaaaab", "aaaaaa"));
+        assertTrue(hasher.needsRehash("aaaaaa"));
+
+        var weaker = new PasswordHasher(500, 100, 60000).hash("aaaaaa");
+        assertTrue(hasher.verify("aaaaaa", weaker));
+        assertTrue(hasher.needsRehash(weaker));
+    }
+
+    @Test
+    void plaintext_that_look_like_hash_compare_as_plaintext() {
+        for (var stored : new String[]{"pbkdf2$x$y$z", "pbkdf2$1000$!!$abc", "pbkdf2$-1$YWJj$YWJj", "pbkdf2$1$$YWJj"}) {
+            assertTrue(hasher.verify(stored, stored));
+            assertFalse(hasher.verify("aaaaaa", stored));
+            assertTrue(hasher.needsRehash(stored));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package fullforum.services;
+
+import fullforum.BaseTest;
+import fullforum.data.models.SessionToken;
+import fullforum.data.models.User;
+import fullforum.data.repos.SessionTokenRepository;
+import fullforum.data.repos.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.servlet.http.Cookie;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionStoreTest extends BaseTest {
+
+    @Autowired
+    SessionStore sessionStore;
+
+    @Autowired
+    SessionTokenRepository sessionTokenRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    Snowflake snowflake;
+
+    @Autowired
+    PasswordHasher passwordHasher;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    void issued_token_resolve_to_user_and_survive_cache_loss() {
+        var token = sessionStore.issue(5L);
+
+        assertEquals(5L, sessionStore.resolve(token));
+        sessionStore.clear();
+        assertEquals(5L, sessionStore.resolve(token));
+        assertNull(sessionStore.resolve(token + "x"));
+        assertNull(sessionStore.resolve(null));
+        // 数据库中不保存明文
+        assertNull(sessionTokenRepository.findByTokenHash(token));
+    }
+
+    @Test
+    void revoked_and_expired_token_resolve_to_null() {
+        var token = sessionStore.issue(5L);
+        sessionStore.revoke(token);
+        assertNull(sessionStore.resolve(token));
+
+        sessionTokenRepository.save(new SessionToken(snowflake.nextId(), SessionStore.hash("expired"), 5L,
+                System.currentTimeMillis() - 1));
+        assertNull(sessionStore.resolve("expired"));
+    }
+
+    @Test
+    void auth_accept_token_cookie_and_upgrade_legacy_cookie_to_token() {
+        userRepository.save(new User(5, "u123", "aaaaaa", "", ""));
+        var before = sessionStore.stats();
+
+        var request = new MockHttpServletRequest();
+        var response = new MockHttpServletResponse();
+        request.setCookies(new Cookie("username", "u123"), new Cookie("password", "aaaaaa"));
+        var legacy = new Auth(request, response, userRepository, sessionStore, passwordHasher);
+        assertTrue(legacy.isLoggedIn());
+        assertEquals(5L, legacy.userId());
+        var token = response.getCookie(Auth.TOKEN_COOKIE);
+        assertNotNull(token);
+        assertTrue(token.isHttpOnly());
+
+        request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(Auth.TOKEN_COOKIE, token.getValue()));
+        var byToken = new Auth(request, new MockHttpServletResponse(), userRepository, sessionStore, passwordHasher);
+        assertEquals(5L, byToken.userId());
+
+        request = new MockHttpServletRequest();
+        response = new MockHttpServletResponse();
+        request.setCookies(new Cookie("username", "u123"), new Cookie("password", "wrong!"));
+        var rejected = new Auth(request, response, userRepository, sessionStore, passwordHasher);
+        assertFalse(rejected.isLoggedIn());
+        assertEquals(0, response.getCookie(Auth.TOKEN_COOKIE).getMaxAge());
+
+        var after = sessionStore.stats();
+        assertEquals(1, after.getLegacyRequests() - before.getLegacyRequests());
+        assertEquals(1, after.getTokenRequests() - before.getTokenRequests());
+        assertEquals(1, after.getRejectedRequests() - before.getRejectedRequests());
+    }
+
+    @Test
+    void legacy_cookie_upgrade_commit_token_independently_of_request_transaction() {
+        userRepository.save(new User(5, "u123", "aaaaaa", "", ""));
+        var request = new MockHttpServletRequest();
+        var response = new MockHttpServletResponse();
+        request.setCookies(new Cookie("username", "u123"), new Cookie("password", "aaaaaa"));
+        assertTrue(new Auth(request, response, userRepository, sessionStore, passwordHasher).isLoggedIn());
+        var tokenHash = SessionStore.hash(response.getCookie(Auth.TOKEN_COOKIE).getValue());
+
+        // 请求的事务（这里是测试的事务）还没有提交，其他事务已经能看到token
+        var newTransaction = new TransactionTemplate(transactionManager);
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        assertNotNull(newTransaction.execute(status -> sessionTokenRepository.findByTokenHash(tokenHash)));
+        newTransaction.execute(status -> sessionTokenRepository.deleteByTokenHash(tokenHash));
+    }
+}
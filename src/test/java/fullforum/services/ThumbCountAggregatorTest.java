@@ -0,0 +1,63 @@
+package fullforum.services;
+
+import fullforum.BaseTest;
+import fullforum.data.models.Comment;
+import fullforum.data.models.TargetType;
+import fullforum.data.repos.CommentRepository;
+import fullforum.data.repos.ReplyRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.transaction.Transactional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ThumbCountAggregatorTest extends BaseTest {
+
+    @Autowired
+    CommentRepository commentRepository;
+
+    @Autowired
+    ReplyRepository replyRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * 增量在事务提交后才进入内存，所以这里每次点赞使用单独提交的事务
+     */
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    void hot_target_deltas_are_merged_until_flush() {
+        var aggregator = new ThumbCountAggregator(true, 2, transactionManager);
+        aggregator.commentRepository = commentRepository;
+        aggregator.replyRepository = replyRepository;
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        commentRepository.save(new Comment(424242L, 1L, 1L, "hot"));
+        try {
+            for (int i = 0; i < 5; i++) {
+                transactionTemplate.execute(status -> {
+                    aggregator.add(TargetType.Comment, 424242L, 1);
+                    return null;
+                });
+            }
+            // 前两次直接写入，之后的增量合并
+            assertEquals(2, commentRepository.findById(424242L).orElseThrow().getThumbCount());
+
+            assertEquals(1, aggregator.flush());
+            assertEquals(5, commentRepository.findById(424242L).orElseThrow().getThumbCount());
+            assertEquals(0, aggregator.flush());
+
+            // 写入后重新统计热度
+            transactionTemplate.execute(status -> {
+                aggregator.add(TargetType.Comment, 424242L, -1);
+                return null;
+            });
+            assertEquals(4, commentRepository.findById(424242L).orElseThrow().getThumbCount());
+        } finally {
+            commentRepository.deleteById(424242L);
+        }
+    }
+}
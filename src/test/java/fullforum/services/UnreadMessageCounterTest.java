@@ -0,0 +1,66 @@
+package fullforum.services;
+
+import fullforum.BaseTest;
+import fullforum.data.models.Message;
+import fullforum.data.repos.MessageRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnreadMessageCounterTest extends BaseTest {
+
+    @Autowired
+    UnreadMessageCounter unreadCounter;
+
+    @Autowired
+    MessageRepository messageRepository;
+
+    @Test
+    void counter_load_lazily_and_apply_deltas() {
+        var read = new Message(1L, -1L, 7L);
+        read.setHaveRead(true);
+        messageRepository.save(read);
+        messageRepository.save(new Message(2L, -1L, 7L));
+        messageRepository.save(new Message(3L, -1L, 7L));
+
+        assertEquals(2, unreadCounter.get(7L));
+
+        unreadCounter.apply(7L, 1);
+        assertEquals(3, unreadCounter.get(7L));
+        unreadCounter.apply(7L, -10);
+        assertEquals(0, unreadCounter.get(7L));
+    }
+
+    @Test
+    void deltas_wait_for_commit_and_skip_uncached_users() {
+        messageRepository.save(new Message(1L, -1L, 7L));
+        assertEquals(1, unreadCounter.get(7L));
+
+        // 测试中的事务最终会回滚，增量不应生效
+        unreadCounter.adjust(7L, 5);
+        unreadCounter.adjustAll(Map.of(7L, 5L));
+        assertEquals(1, unreadCounter.get(7L));
+
+        unreadCounter.apply(8L, 5);
+        assertEquals(0, unreadCounter.get(8L));
+    }
+
+    @Test
+    void delta_arriving_while_loading_prevent_caching_stale_count() {
+        messageRepository.save(new Message(1L, -1L, 7L));
+
+        // 统计开始后、缓存之前提交了一条新消息
+        unreadCounter.beginLoad(7L);
+        messageRepository.save(new Message(2L, -1L, 7L));
+        unreadCounter.apply(7L, 1);
+        unreadCounter.endLoad(7L, 1L);
+        assertEquals(2, unreadCounter.get(7L));
+
+        // 这次统计期间没有增量，结果被缓存，之后的增量直接生效
+        unreadCounter.apply(7L, 1);
+        assertEquals(3, unreadCounter.get(7L));
+    }
+}